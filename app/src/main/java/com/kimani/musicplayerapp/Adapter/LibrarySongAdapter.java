@@ -0,0 +1,102 @@
+package com.kimani.musicplayerapp.Adapter;
+
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+import android.view.animation.AnimationUtils;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.kimani.musicplayerapp.R;
+import com.kimani.musicplayerapp.databinding.ItemSongBinding;
+import com.kimani.musicplayerapp.library.SongStore;
+import com.kimani.musicplayerapp.models.TrackInfo;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Adapter for the local library list. Rows are bound straight from the columns of a
+ * {@link SongStore}, so no model object exists per row; a TrackInfo is only built for the
+ * row that was tapped. Uses the same row layout and listeners as {@link SongAdapter}.
+ */
+public class LibrarySongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewholder> {
+
+    private SongStore songs = SongStore.EMPTY;
+    private Set<Long> selectedIds = Collections.emptySet(); // Ids highlighted in multi-select mode
+    private final SongAdapter.OnItemClickListener listener;
+    private final SongAdapter.OnItemLongClickListener longClickListener;
+
+    public LibrarySongAdapter(SongAdapter.OnItemClickListener listener, SongAdapter.OnItemLongClickListener longClickListener) {
+        this.listener = listener;
+        this.longClickListener = longClickListener;
+    }
+
+    /**
+     * Swaps in a new view of the library. The caller is responsible for the matching notify call.
+     */
+    public void setSongs(SongStore songs) {
+        this.songs = songs;
+    }
+
+    /**
+     * Sets the ids to highlight. The set is read, not copied; notify the rows that changed.
+     */
+    public void setSelectedIds(Set<Long> selectedIds) {
+        this.selectedIds = selectedIds;
+    }
+
+    @NonNull
+    @Override
+    public SongAdapter.SongViewholder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        ItemSongBinding binding = ItemSongBinding.inflate(
+                LayoutInflater.from(parent.getContext()),
+                parent,
+                false
+        );
+        return new SongAdapter.SongViewholder(binding);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SongAdapter.SongViewholder holder, int position) {
+        holder.binding.textTitle.setText(songs.getTitle(position));
+        holder.binding.textArtist.setText(songs.getArtist(position));
+        holder.itemView.setAlpha(selectedIds.contains(songs.getId(position)) ? 0.5f : 1f);
+
+        holder.itemView.startAnimation(
+                AnimationUtils.loadAnimation(holder.itemView.getContext(),
+                        R.anim.scroll_recyclerview)
+        );
+
+        // Local rows have no cover URL, so skip Glide and show the placeholder directly
+        holder.binding.imageAlbumArt.setImageResource(R.drawable.ic_music_note_24);
+
+        // Standard Click
+        holder.itemView.setOnClickListener(v -> {
+            int row = holder.getBindingAdapterPosition();
+            if (listener != null && row != RecyclerView.NO_POSITION) {
+                listener.onItemClick(trackAt(row));
+            }
+        });
+
+        // Long Click for BottomSheet logic
+        holder.itemView.setOnLongClickListener(v -> {
+            int row = holder.getBindingAdapterPosition();
+            if (longClickListener != null && row != RecyclerView.NO_POSITION) {
+                longClickListener.onItemLongClick(trackAt(row));
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public int getItemCount() {
+        return songs.size();
+    }
+
+    private TrackInfo trackAt(int row) {
+        return new TrackInfo(songs.getId(row), songs.getTitle(row),
+                songs.getArtist(row), songs.getPath(row), "");
+    }
+}
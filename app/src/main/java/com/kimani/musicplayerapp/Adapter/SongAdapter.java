@@ -5,6 +5,8 @@ import android.view.ViewGroup;
 import android.view.animation.AnimationUtils;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
@@ -12,11 +14,40 @@ import com.kimani.musicplayerapp.R;
 import com.kimani.musicplayerapp.databinding.ItemSongBinding;
 import com.kimani.musicplayerapp.models.TrackInfo;
 
+import java.util.ArrayList;
 import java.util.List;
-
+import java.util.Objects;
+
+/**
+ * SongAdapter shows a list of TrackInfo, local or online (search results).
+ * Lists are handed over with {@link #submitList(List)}: an AsyncListDiffer computes the
+ * difference to the current list on a background thread and dispatches only the changed rows,
+ * so results refreshing on every keystroke do not rebind the whole list. Items have stable ids,
+ * so rows that survive an update keep their views.
+ */
 public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewholder> {
 
-    private final List<TrackInfo> songs;
+    /**
+     * Same track: same MediaStore id for local tracks, same document id for online ones.
+     * Same contents: nothing shown in the row changed.
+     */
+    private static final DiffUtil.ItemCallback<TrackInfo> DIFF_CALLBACK = new DiffUtil.ItemCallback<TrackInfo>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull TrackInfo oldItem, @NonNull TrackInfo newItem) {
+            return oldItem.getLocalId() == newItem.getLocalId()
+                    && Objects.equals(oldItem.getId(), newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull TrackInfo oldItem, @NonNull TrackInfo newItem) {
+            return Objects.equals(oldItem.getTitle(), newItem.getTitle())
+                    && Objects.equals(oldItem.getSubtitle(), newItem.getSubtitle())
+                    && Objects.equals(oldItem.getUrl(), newItem.getUrl())
+                    && Objects.equals(oldItem.getCoverUrl(), newItem.getCoverUrl());
+        }
+    };
+
+    private final AsyncListDiffer<TrackInfo> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private final OnItemClickListener listener;
     private final OnItemLongClickListener longClickListener;
 
@@ -31,10 +62,34 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewholder
     }
 
     // Updated Constructor to require both listeners
-    public SongAdapter(List<TrackInfo> songs, OnItemClickListener listener, OnItemLongClickListener longClickListener) {
-        this.songs = songs;
+    public SongAdapter(OnItemClickListener listener, OnItemLongClickListener longClickListener) {
         this.listener = listener;
         this.longClickListener = longClickListener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Replaces the list. The diff runs in the background; pass a new list every time, never
+     * a list previously submitted and then modified.
+     */
+    public void submitList(List<TrackInfo> newSongs) {
+        differ.submitList(newSongs);
+    }
+
+    /**
+     * @return Local tracks use their MediaStore id; online tracks a 64-bit hash of their document
+     * id with the sign bit set, so the two never collide (MediaStore ids are positive).
+     */
+    @Override
+    public long getItemId(int position) {
+        TrackInfo track = differ.getCurrentList().get(position);
+        if (track.getLocalId() >= 0) return track.getLocalId();
+        String id = track.getId() != null ? track.getId() : "";
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < id.length(); i++) {
+            hash = (hash ^ id.charAt(i)) * 0x100000001b3L;
+        }
+        return hash | Long.MIN_VALUE;
     }
 
     @NonNull
@@ -50,7 +105,7 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewholder
 
     @Override
     public void onBindViewHolder(@NonNull SongViewholder holder, int position) {
-        TrackInfo track = songs.get(position);
+        TrackInfo track = differ.getCurrentList().get(position);
 
         holder.binding.textTitle.setText(track.getTitle());
         holder.binding.textArtist.setText(track.getSubtitle());
@@ -86,7 +141,7 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewholder
 
     @Override
     public int getItemCount() {
-        return songs.size();
+        return differ.getCurrentList().size();
     }
 
     public static class SongViewholder extends RecyclerView.ViewHolder {
@@ -97,19 +152,16 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewholder
         }
     }
 
-    // Add these methods inside SongAdapter.java
-
     public void updateData(List<TrackInfo> newSongs) {
-        this.songs.clear();
-        this.songs.addAll(newSongs);
-        notifyDataSetChanged();
+        submitList(new ArrayList<>(newSongs));
     }
 
     public void removeSong(int position) {
-        if (position >= 0 && position < songs.size()) {
-            songs.remove(position);
-            notifyItemRemoved(position);
-            notifyItemRangeChanged(position, songs.size());
+        List<TrackInfo> current = differ.getCurrentList();
+        if (position >= 0 && position < current.size()) {
+            List<TrackInfo> updated = new ArrayList<>(current);
+            updated.remove(position);
+            submitList(updated);
         }
     }
 }
\ No newline at end of file
@@ -1,9 +1,12 @@
 // app/src/main/java/com/kimani/musicplayerapp/HomeActivity.java
 package com.kimani.musicplayerapp;
 
+import android.app.Activity;
+import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.res.ColorStateList;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -22,6 +25,8 @@ import androidx.activity.EdgeToEdge;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
+import androidx.core.widget.ImageViewCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -36,11 +41,14 @@ import com.kimani.musicplayerapp.Adapter.CategoryAdapter;
 import com.kimani.musicplayerapp.Adapter.SectionSongListAdapter;
 import com.kimani.musicplayerapp.databinding.ActivityHomeBinding;
 import com.kimani.musicplayerapp.models.CategoryModel;
-import com.kimani.musicplayerapp.models.PlaylistModel;
 import com.kimani.musicplayerapp.models.SongModel;
+import com.kimani.musicplayerapp.library.LibraryRepository;
+import com.kimani.musicplayerapp.playlist.PlaylistStore;
+import com.kimani.musicplayerapp.playlist.PlaylistSummary;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -60,7 +68,8 @@ public class HomeActivity extends AppCompatActivity {
     private RecyclerView playlistRecyclerView;
     private MaterialButton createPlaylistBtn;
     private PlaylistAdapter playlistAdapter;
-    private List<PlaylistModel> playlistList;
+    private List<PlaylistSummary> playlistList;
+    private final PlaylistStore.CatalogListener catalogListener = this::showPlaylists;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -87,7 +96,7 @@ public class HomeActivity extends AppCompatActivity {
         // --- Initialize Playlist System ---
         if (playlistRecyclerView != null && createPlaylistBtn != null) {
             setupPlaylistRecyclerView();
-            loadPlaylists();
+            PlaylistStore.getInstance(this).addCatalogListener(catalogListener);
             createPlaylistBtn.setOnClickListener(v -> showCreatePlaylistDialog());
         }
     }
@@ -199,11 +208,14 @@ public class HomeActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        // Update the mini-player view and refresh playlists
+        // Update the mini-player view; playlists refresh themselves when they change
         showPlayerView();
-        if (playlistRecyclerView != null) {
-            loadPlaylists();
-        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        PlaylistStore.getInstance(this).removeCatalogListener(catalogListener);
     }
 
     /**
@@ -354,68 +366,92 @@ public class HomeActivity extends AppCompatActivity {
     }
 
     /**
-     * Persists a new playlist name into SharedPreferences.
+     * Persists a new, empty playlist in the PlaylistStore.
      */
     private void savePlaylist(String name) {
-        SharedPreferences prefs = getSharedPreferences("Playlists", MODE_PRIVATE);
-        if (prefs.contains(name)) {
-            Toast.makeText(this, "Playlist with this name already exists", Toast.LENGTH_SHORT).show();
-            return;
-        }
-        SharedPreferences.Editor editor = prefs.edit();
-        // Initialize with an empty set of song paths/IDs
-        editor.putStringSet(name, new HashSet<>());
-        editor.apply();
-
-        Toast.makeText(this, "Playlist '" + name + "' created", Toast.LENGTH_SHORT).show();
-        loadPlaylists(); // Refresh list
+        PlaylistStore.getInstance(this).createPlaylistAsync(name, created -> {
+            if (created == 0) {
+                Toast.makeText(this, "Playlist with this name already exists", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            Toast.makeText(this, "Playlist '" + name + "' created", Toast.LENGTH_SHORT).show();
+        });
     }
 
     /**
-     * Loads all playlists stored in SharedPreferences and updates the adapter.
+     * Shows the playlist catalog; called when it is first loaded and after every change.
      */
-    private void loadPlaylists() {
-        SharedPreferences prefs = getSharedPreferences("Playlists", MODE_PRIVATE);
-        Map<String, ?> allEntries = prefs.getAll();
-
+    private void showPlaylists(List<PlaylistSummary> catalog) {
         playlistList.clear();
-        for (Map.Entry<String, ?> entry : allEntries.entrySet()) {
-            List<String> songIds = new ArrayList<>();
-            if (entry.getValue() instanceof Set) {
-                songIds.addAll((Set<String>) entry.getValue());
-            }
-            playlistList.add(new PlaylistModel(entry.getKey(), songIds));
-        }
+        playlistList.addAll(catalog);
 
         // Sort playlists alphabetically
         Collections.sort(playlistList, (p1, p2) -> p1.getName().compareTo(p2.getName()));
 
         if (playlistAdapter != null) {
             playlistAdapter.notifyDataSetChanged();
+            playlistAdapter.loadCovers();
         }
     }
 }
 
 
 /**
- * Adapter for displaying local playlists in a RecyclerView.
+ * Adapter for displaying local playlists in a RecyclerView, with their song count and the
+ * album art of their first song.
  */
 class PlaylistAdapter extends RecyclerView.Adapter<PlaylistAdapter.PlaylistViewHolder> {
 
+    private static final Uri ALBUM_ART_URI = Uri.parse("content://media/external/audio/albumart");
+
     private final Context context;
-    private final List<PlaylistModel> playlistList;
+    private final List<PlaylistSummary> playlistList;
     private final OnPlaylistClickListener listener;
+    private final Map<Long, Long> albumIdsByTrack = new HashMap<>(); // Cover track id -> album id
+    private final Set<Long> pendingTracks = new HashSet<>();         // Being looked up
 
     public interface OnPlaylistClickListener {
         void onPlaylistClick(String playlistName);
     }
 
-    public PlaylistAdapter(Context context, List<PlaylistModel> playlistList, OnPlaylistClickListener listener) {
+    public PlaylistAdapter(Context context, List<PlaylistSummary> playlistList, OnPlaylistClickListener listener) {
         this.context = context;
         this.playlistList = playlistList;
         this.listener = listener;
     }
 
+    /**
+     * Looks up the albums of cover tracks not seen before, in one batch, and redraws once they
+     * are known. Covers are cached by track id, so a catalog change that keeps a playlist's
+     * cover track, or arrives while its lookup is still running, does not look it up again.
+     */
+    public void loadCovers() {
+        List<String> missing = new ArrayList<>();
+        for (PlaylistSummary playlist : playlistList) {
+            long trackId = playlist.getCoverTrackId();
+            if (trackId >= 0 && !albumIdsByTrack.containsKey(trackId) && pendingTracks.add(trackId)) {
+                missing.add(String.valueOf(trackId));
+            }
+        }
+        if (missing.isEmpty()) return;
+        LibraryRepository.getInstance(context).resolveAsync(missing, (songs, unresolved) -> {
+            for (String trackId : missing) {
+                pendingTracks.remove(Long.parseLong(trackId));
+            }
+            if (context instanceof Activity
+                    && (((Activity) context).isDestroyed() || ((Activity) context).isFinishing())) {
+                return;
+            }
+            for (Song song : songs) {
+                albumIdsByTrack.put(song.getId(), song.getAlbumId());
+            }
+            for (String trackId : unresolved) {
+                albumIdsByTrack.put(Long.parseLong(trackId), -1L); // Not looked up again
+            }
+            notifyDataSetChanged();
+        });
+    }
+
     @NonNull
     @Override
     public PlaylistViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -425,11 +461,26 @@ class PlaylistAdapter extends RecyclerView.Adapter<PlaylistAdapter.PlaylistViewH
 
     @Override
     public void onBindViewHolder(@NonNull PlaylistViewHolder holder, int position) {
-        PlaylistModel playlist = playlistList.get(position);
+        PlaylistSummary playlist = playlistList.get(position);
         holder.playlistName.setText(playlist.getName());
-
-        // Set the static icon for playlists
-        holder.playlistIcon.setImageResource(R.drawable.icon_playlist);
+        int count = playlist.getTrackCount();
+        holder.playlistCount.setText(count == 1 ? "1 song" : count + " songs");
+
+        Long albumId = albumIdsByTrack.get(playlist.getCoverTrackId());
+        if (albumId != null && albumId > 0) {
+            ImageViewCompat.setImageTintList(holder.playlistIcon, null);
+            Glide.with(context)
+                    .load(ContentUris.withAppendedId(ALBUM_ART_URI, albumId))
+                    .placeholder(R.drawable.icon_playlist)
+                    .error(R.drawable.icon_playlist)
+                    .into(holder.playlistIcon);
+        } else {
+            // Set the static icon for playlists
+            Glide.with(context).clear(holder.playlistIcon);
+            ImageViewCompat.setImageTintList(holder.playlistIcon,
+                    ColorStateList.valueOf(ContextCompat.getColor(context, R.color.orange)));
+            holder.playlistIcon.setImageResource(R.drawable.icon_playlist);
+        }
 
         holder.itemView.setOnClickListener(v -> {
             if (listener != null) {
@@ -446,11 +497,13 @@ class PlaylistAdapter extends RecyclerView.Adapter<PlaylistAdapter.PlaylistViewH
     public static class PlaylistViewHolder extends RecyclerView.ViewHolder {
         ImageView playlistIcon;
         TextView playlistName;
+        TextView playlistCount;
 
         public PlaylistViewHolder(@NonNull View itemView) {
             super(itemView);
             playlistIcon = itemView.findViewById(R.id.playlistIcon);
             playlistName = itemView.findViewById(R.id.playlistName);
+            playlistCount = itemView.findViewById(R.id.playlistCount);
         }
     }
 }
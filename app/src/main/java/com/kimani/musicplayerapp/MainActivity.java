@@ -2,23 +2,20 @@ package com.kimani.musicplayerapp;
 
 import android.Manifest;
 import android.app.PendingIntent;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Intent;
 import android.content.IntentSender;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.provider.MediaStore;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.EditText;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
+import androidx.activity.OnBackPressedCallback;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.Nullable;
@@ -30,13 +27,18 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.kimani.musicplayerapp.Adapter.LibrarySongAdapter;
 import com.kimani.musicplayerapp.Adapter.SongAdapter;
 import com.kimani.musicplayerapp.databinding.ActivityMainBinding;
+import com.kimani.musicplayerapp.library.LibraryChange;
+import com.kimani.musicplayerapp.library.LibraryRepository;
+import com.kimani.musicplayerapp.library.LongIntMap;
+import com.kimani.musicplayerapp.library.SongStore;
 import com.kimani.musicplayerapp.models.TrackInfo;
+import com.kimani.musicplayerapp.playlist.PlaylistStore;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -45,21 +47,32 @@ import java.util.Set;
  * It handles permission requests, fetches audio files from the device storage,
  * and provides options to play, rename, delete, or favorite songs.
  */
-public class MainActivity extends AppCompatActivity implements SongAdapter.OnItemClickListener, SongAdapter.OnItemLongClickListener {
+public class MainActivity extends AppCompatActivity implements SongAdapter.OnItemClickListener, SongAdapter.OnItemLongClickListener,
+        LibraryRepository.ChangeListener {
 
     // Request codes for Scoped Storage operations (Android 10+)
     private static final int REQUEST_RENAME_SONG = 101;
     private static final int REQUEST_DELETE_SONG = 102;
 
     // Temporary storage for song metadata during rename/delete operations
-    private Song pendingSong;
-    private String pendingTitle;
+    private long[] pendingIds;
+    private String pendingTitle;  // Null keeps each song's title (multi-song edits)
     private String pendingArtist;
 
+    // Multi-select mode is active while at least one id is selected
+    private final Set<Long> selectedIds = new LinkedHashSet<>();
+    private final OnBackPressedCallback exitSelection = new OnBackPressedCallback(false) {
+        @Override
+        public void handleOnBackPressed() {
+            clearSelection();
+        }
+    };
+
     // UI elements and adapters
     private ActivityMainBinding binding;
-    private SongAdapter adapter;
-    private List<Song> songList;
+    private LibrarySongAdapter adapter;
+    private SongStore songs = SongStore.EMPTY; // Columnar view of the library, bound by index
+    private final LongIntMap positionsById = new LongIntMap(); // MediaStore id -> list position
     private FloatingActionButton SearchBtn;
 
     // Permission launcher to handle the result of the runtime permission request
@@ -88,12 +101,25 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnIte
 
         // Setup RecyclerView with a LinearLayoutManager
         binding.recyclerViewSongs.setLayoutManager(new LinearLayoutManager(this));
-        
+        adapter = new LibrarySongAdapter(this, this);
+        adapter.setSelectedIds(selectedIds);
+        binding.recyclerViewSongs.setAdapter(adapter);
+        getOnBackPressedDispatcher().addCallback(this, exitSelection);
+
         // Check for necessary permissions before loading songs
         checkPermissionAndLoadSongs();
 
         // Setup the bottom navigation bar
         setupBottomNavigation();
+
+        // Rename/delete (ours or another app's) arrive as deltas instead of full reloads
+        LibraryRepository.getInstance(this).addChangeListener(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        LibraryRepository.getInstance(this).removeChangeListener(this);
     }
 
     /**
@@ -140,54 +166,89 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnIte
     }
 
     /**
-     * Queries the device's MediaStore for audio files.
-     * @return A list of Song objects containing music metadata.
+     * Starts a background library load. Rows are streamed into the RecyclerView
+     * chunk by chunk through {@link #onSongsLoaded(SongStore, int, boolean)}.
      */
-    private List<Song> getSongs() {
-        List<Song> songs = new ArrayList<>();
-        Uri uri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-        String[] projection = {
-                MediaStore.Audio.Media._ID, MediaStore.Audio.Media.TITLE,
-                MediaStore.Audio.Media.ARTIST, MediaStore.Audio.Media.DATA,
-                MediaStore.Audio.Media.ALBUM_ID
-        };
-
-        // Querying for music files that are not 0 in the MediaStore
-        try (Cursor cursor = getContentResolver().query(uri, projection, MediaStore.Audio.Media.IS_MUSIC + "!=0", null, MediaStore.Audio.Media.TITLE + " ASC")) {
-            if (cursor != null) {
-                int idCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-                int titleCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
-                int artistCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
-                int dataCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
-                int albumCol = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
-
-                while (cursor.moveToNext()) {
-                    songs.add(new Song(cursor.getLong(idCol), cursor.getString(titleCol),
-                            cursor.getString(artistCol), cursor.getString(dataCol), cursor.getLong(albumCol)));
-                }
-            }
-        }
-        return songs;
+    private void loadSongs() {
+        // The shared repository only rescans what changed since the last visit
+        LibraryRepository.getInstance(this).loadAsync(this::onSongsLoaded);
     }
 
     /**
-     * Loads songs into the RecyclerView and handles the empty state UI.
+     * Shows the rows loaded so far and handles the empty state UI.
      */
-    private void loadSongs() {
-        songList = getSongs();
-        if (songList.isEmpty()) {
+    private void onSongsLoaded(SongStore loaded, int firstNewRow, boolean complete) {
+        if (isDestroyed()) return;
+
+        songs = loaded;
+        adapter.setSongs(loaded);
+        if (firstNewRow == 0) {
+            positionsById.clear();
+        }
+        indexPositions(firstNewRow);
+        if (firstNewRow == 0) {
+            adapter.notifyDataSetChanged();
+        } else if (loaded.size() > firstNewRow) {
+            adapter.notifyItemRangeInserted(firstNewRow, loaded.size() - firstNewRow);
+        }
+
+        if (!songs.isEmpty()) {
+            binding.recyclerViewSongs.setVisibility(View.VISIBLE);
+            binding.textViewNoSongs.setVisibility(View.GONE);
+        } else if (complete) {
             binding.recyclerViewSongs.setVisibility(View.GONE);
             binding.textViewNoSongs.setVisibility(View.VISIBLE);
-        } else {
-            // Convert Song objects to TrackInfo for the Adapter
-            List<TrackInfo> trackList = new ArrayList<>();
-            for (Song s : songList) {
-                trackList.add(new TrackInfo(String.valueOf(s.getId()), s.getTitle(), s.getArtist(), s.getPath(), ""));
+        }
+    }
+
+    /**
+     * Notifies the adapter about only the affected rows. The repository reports the
+     * row positions of each change, so nothing has to be searched here.
+     */
+    @Override
+    public void onLibraryChanged(SongStore changed, List<LibraryChange> changes) {
+        songs = changed;
+        adapter.setSongs(changed);
+        // Rows shift below the first touched one, so re-index from there
+        int firstTouched = songs.size();
+        for (LibraryChange change : changes) {
+            if (change.getType() == LibraryChange.Type.REMOVE) {
+                positionsById.remove(change.getOldSong().getId());
+                selectedIds.remove(change.getOldSong().getId());
+            }
+            if (change.getOldRow() >= 0) firstTouched = Math.min(firstTouched, change.getOldRow());
+            if (change.getNewRow() >= 0) firstTouched = Math.min(firstTouched, change.getNewRow());
+        }
+        indexPositions(firstTouched);
+
+        for (LibraryChange change : changes) {
+            switch (change.getType()) {
+                case INSERT:
+                    adapter.notifyItemInserted(change.getNewRow());
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRemoved(change.getOldRow());
+                    break;
+                case UPDATE:
+                    if (change.getOldRow() != change.getNewRow()) {
+                        adapter.notifyItemMoved(change.getOldRow(), change.getNewRow());
+                    }
+                    adapter.notifyItemChanged(change.getNewRow());
+                    break;
             }
-            adapter = new SongAdapter(trackList, this, this);
-            binding.recyclerViewSongs.setAdapter(adapter);
-            binding.recyclerViewSongs.setVisibility(View.VISIBLE);
-            binding.textViewNoSongs.setVisibility(View.GONE);
+        }
+        boolean empty = songs.isEmpty();
+        binding.recyclerViewSongs.setVisibility(empty ? View.GONE : View.VISIBLE);
+        binding.textViewNoSongs.setVisibility(empty ? View.VISIBLE : View.GONE);
+        updateSelectionState();
+    }
+
+    /**
+     * Records the list position of every song from the given row to the end.
+     */
+    private void indexPositions(int fromRow) {
+        for (int row = fromRow; row < songs.size(); row++) {
+            positionsById.put(songs.getId(row), row);
         }
     }
 
@@ -196,18 +257,14 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnIte
      */
     @Override
     public void onItemClick(TrackInfo track) {
-        int position = -1;
-        for (int i = 0; i < songList.size(); i++) {
-            if (String.valueOf(songList.get(i).getId()).equals(track.getId())) {
-                position = i;
-                break;
-            }
-        }
-        if (position != -1) {
+        int position = positionsById.get(track.getLocalId());
+        if (position != LongIntMap.MISSING && !selectedIds.isEmpty()) {
+            toggleSelection(track.getLocalId());
+        } else if (position != LongIntMap.MISSING) {
             Intent intent = new Intent(this, PlayerActivity.class);
-            // Pass the entire song list and the current position to the player
-            intent.putParcelableArrayListExtra("songList", new ArrayList<>(songList));
-            intent.putExtra("position", position);
+            // Pass a handle to the current library view and the position to the player
+            intent.putExtra(QueueRegistry.EXTRA_QUEUE_HANDLE, QueueRegistry.register(QueueRegistry.of(songs)));
+            intent.putExtra(QueueRegistry.EXTRA_START_INDEX, position);
             startActivity(intent);
         }
     }
@@ -217,48 +274,44 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnIte
      */
     @Override
     public void onItemLongClick(TrackInfo track) {
-        for (int i = 0; i < songList.size(); i++) {
-            if (String.valueOf(songList.get(i).getId()).equals(track.getId())) {
-                showBottomSheet(i);
-                break;
-            }
+        int position = positionsById.get(track.getLocalId());
+        if (position != LongIntMap.MISSING && !selectedIds.isEmpty()) {
+            showSelectionSheet();
+        } else if (position != LongIntMap.MISSING) {
+            showBottomSheet(position);
         }
     }
 
     /**
-     * Displays a BottomSheetDialog with options to Delete, Rename, or Favorite a song.
+     * Displays a BottomSheetDialog with options to Delete, Rename, Favorite or Select a song.
      */
     private void showBottomSheet(int position) {
         BottomSheetDialog bottomSheet = new BottomSheetDialog(this);
         View view = getLayoutInflater().inflate(R.layout.bottom_song_options, null);
-        Song song = songList.get(position);
+        Song song = songs.getSong(position);
+        long[] ids = {song.getId()};
 
         // Delete Button Logic
         view.findViewById(R.id.btnDelete).setOnClickListener(v -> {
-            Uri songUri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, song.getId());
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-                // Request user permission for deletion on Android 11+
-                PendingIntent pi = MediaStore.createDeleteRequest(getContentResolver(), Collections.singletonList(songUri));
-                try {
-                    startIntentSenderForResult(pi.getIntentSender(), REQUEST_DELETE_SONG, null, 0, 0, 0);
-                } catch (IntentSender.SendIntentException e) { e.printStackTrace(); }
-            } else {
-                // Direct deletion for older Android versions
-                getContentResolver().delete(songUri, null, null);
-                loadSongs();
-            }
+            deleteSongs(ids);
             bottomSheet.dismiss();
         });
 
         // Rename Button Logic
         view.findViewById(R.id.btnRename).setOnClickListener(v -> {
-            showRenameDialog(position);
+            showRenameDialog(ids, song);
             bottomSheet.dismiss();
         });
 
         // Favorite Button Logic
         view.findViewById(R.id.btnFavorite).setOnClickListener(v -> {
-            addToFavourites(song);
+            addToFavourites(ids);
+            bottomSheet.dismiss();
+        });
+
+        // Select Button Logic: enters multi-select mode with this song selected
+        view.findViewById(R.id.btnSelect).setOnClickListener(v -> {
+            toggleSelection(song.getId());
             bottomSheet.dismiss();
         });
 
@@ -267,35 +320,153 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnIte
     }
 
     /**
-     * Displays a dialog to allow the user to edit song Title and Artist.
+     * Displays the same options for every selected song. Each action is a single batch:
+     * one consent request and one ContentProviderOperation batch for the whole selection.
      */
-    private void showRenameDialog(int position) {
+    private void showSelectionSheet() {
+        BottomSheetDialog bottomSheet = new BottomSheetDialog(this);
+        View view = getLayoutInflater().inflate(R.layout.bottom_song_options, null);
+        long[] ids = selectedIdArray();
+
+        TextView delete = view.findViewById(R.id.btnDelete);
+        delete.setText("Delete " + ids.length + " songs");
+        delete.setOnClickListener(v -> {
+            deleteSongs(ids);
+            clearSelection();
+            bottomSheet.dismiss();
+        });
+
+        TextView rename = view.findViewById(R.id.btnRename);
+        rename.setText("Edit " + ids.length + " songs");
+        rename.setOnClickListener(v -> {
+            showRenameDialog(ids, null);
+            clearSelection();
+            bottomSheet.dismiss();
+        });
+
+        TextView favorite = view.findViewById(R.id.btnFavorite);
+        favorite.setText("Add " + ids.length + " to favourite");
+        favorite.setOnClickListener(v -> {
+            addToFavourites(ids);
+            clearSelection();
+            bottomSheet.dismiss();
+        });
+
+        TextView select = view.findViewById(R.id.btnSelect);
+        select.setText("Clear selection");
+        select.setOnClickListener(v -> {
+            clearSelection();
+            bottomSheet.dismiss();
+        });
+
+        bottomSheet.setContentView(view);
+        bottomSheet.show();
+    }
+
+    // =====================================================================================
+    // MULTI-SELECT
+    // =====================================================================================
+
+    private void toggleSelection(long id) {
+        if (!selectedIds.remove(id)) {
+            selectedIds.add(id);
+        }
+        int position = positionsById.get(id);
+        if (position != LongIntMap.MISSING) {
+            adapter.notifyItemChanged(position);
+        }
+        updateSelectionState();
+    }
+
+    private void clearSelection() {
+        long[] ids = selectedIdArray();
+        selectedIds.clear();
+        for (long id : ids) {
+            int position = positionsById.get(id);
+            if (position != LongIntMap.MISSING) {
+                adapter.notifyItemChanged(position);
+            }
+        }
+        updateSelectionState();
+    }
+
+    /**
+     * Shows the selection count in the header and lets Back leave multi-select mode.
+     */
+    private void updateSelectionState() {
+        boolean selecting = !selectedIds.isEmpty();
+        exitSelection.setEnabled(selecting);
+        if (selecting) {
+            binding.textView.setText(selectedIds.size() + " selected");
+        } else {
+            binding.textView.setText(R.string.device_songs);
+        }
+    }
+
+    private long[] selectedIdArray() {
+        long[] ids = new long[selectedIds.size()];
+        int i = 0;
+        for (long id : selectedIds) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    // =====================================================================================
+    // DELETE / EDIT
+    // =====================================================================================
+
+    /**
+     * Deletes the songs. On Android 11+ a single consent dialog covers all of them and
+     * MediaStore's notifications remove the rows; older versions delete in one batch.
+     */
+    private void deleteSongs(long[] ids) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // Request user permission for deletion on Android 11+
+            PendingIntent pi = MediaStore.createDeleteRequest(getContentResolver(), LibraryRepository.contentUris(ids));
+            try {
+                startIntentSenderForResult(pi.getIntentSender(), REQUEST_DELETE_SONG, null, 0, 0, 0);
+            } catch (IntentSender.SendIntentException e) { e.printStackTrace(); }
+        } else {
+            LibraryRepository.getInstance(this).deleteAsync(ids, affected ->
+                    Toast.makeText(this, "Deleted " + affected + " songs", Toast.LENGTH_SHORT).show());
+        }
+    }
+
+    /**
+     * Displays a dialog to edit song Title and Artist. When several songs are edited at once,
+     * only the artist is offered and every title is kept.
+     * @param current The song being edited, or null for a multi-song edit.
+     */
+    private void showRenameDialog(long[] ids, @Nullable Song current) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
-        builder.setTitle("Rename Song");
+        builder.setTitle(current != null ? "Rename Song" : "Edit " + ids.length + " Songs");
         View view = LayoutInflater.from(this).inflate(R.layout.dialog_rename_song, null);
         EditText inputTitle = view.findViewById(R.id.input_song_title);
         EditText inputArtist = view.findViewById(R.id.input_song_artist);
         builder.setView(view);
 
-        Song currentSong = songList.get(position);
-        inputTitle.setText(currentSong.getTitle());
-        inputArtist.setText(currentSong.getArtist());
+        if (current != null) {
+            inputTitle.setText(current.getTitle());
+            inputArtist.setText(current.getArtist());
+        } else {
+            view.findViewById(R.id.title_input_layout).setVisibility(View.GONE);
+        }
 
         builder.setPositiveButton("Save", (dialog, which) -> {
-            pendingTitle = inputTitle.getText().toString().trim();
+            pendingTitle = current != null ? inputTitle.getText().toString().trim() : null;
             pendingArtist = inputArtist.getText().toString().trim();
-            pendingSong = currentSong;
-            if (pendingTitle.isEmpty()) return;
+            pendingIds = ids;
+            if (pendingTitle != null ? pendingTitle.isEmpty() : pendingArtist.isEmpty()) return;
 
-            Uri songUri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, currentSong.getId());
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-                // Request write permission for Android 11+ before updating metadata
-                PendingIntent pi = MediaStore.createWriteRequest(getContentResolver(), Collections.singletonList(songUri));
+                // Request write permission for all songs at once on Android 11+
+                PendingIntent pi = MediaStore.createWriteRequest(getContentResolver(), LibraryRepository.contentUris(ids));
                 try {
                     startIntentSenderForResult(pi.getIntentSender(), REQUEST_RENAME_SONG, null, 0, 0, 0);
                 } catch (IntentSender.SendIntentException e) { e.printStackTrace(); }
             } else {
-                updateSongMetadata(songUri, pendingTitle, pendingArtist);
+                applyPendingEdit();
             }
         });
         builder.setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss());
@@ -303,16 +474,16 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnIte
     }
 
     /**
-     * Updates the song's metadata in the MediaStore.
+     * Writes the pending metadata in one batch on the library's worker thread.
+     * No reload needed: the touched rows are patched in through onLibraryChanged.
      */
-    private void updateSongMetadata(Uri uri, String title, String artist) {
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.Audio.Media.TITLE, title);
-        values.put(MediaStore.Audio.Media.ARTIST, artist);
-        if (getContentResolver().update(uri, values, null, null) > 0) {
-            loadSongs(); // Refresh the list
-            Toast.makeText(this, "Renamed successfully", Toast.LENGTH_SHORT).show();
-        }
+    private void applyPendingEdit() {
+        LibraryRepository.getInstance(this).updateMetadataAsync(pendingIds, pendingTitle, pendingArtist, affected -> {
+            if (affected > 0) {
+                Toast.makeText(this, affected == 1 ? "Renamed successfully" : "Updated " + affected + " songs",
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     /**
@@ -322,30 +493,28 @@ public class MainActivity extends AppCompatActivity implements SongAdapter.OnIte
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         if (resultCode == RESULT_OK) {
-            if (requestCode == REQUEST_RENAME_SONG && pendingSong != null) {
-                Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, pendingSong.getId());
-                updateSongMetadata(uri, pendingTitle, pendingArtist);
-            } else if (requestCode == REQUEST_DELETE_SONG) {
-                loadSongs();
+            if (requestCode == REQUEST_RENAME_SONG && pendingIds != null) {
+                applyPendingEdit();
             }
+            // REQUEST_DELETE_SONG needs no work here: the deletion arrives through onLibraryChanged
         }
     }
 
     /**
-     * Adds a song's ID to the Favorites set in SharedPreferences.
+     * Adds the songs' IDs to the Favorites playlist.
      */
-    private void addToFavourites(Song song) {
-        SharedPreferences prefs = getSharedPreferences("Playlists", MODE_PRIVATE);
-        // Important: Create a new HashSet from the existing one to ensure changes are detected
-        Set<String> favorites = new HashSet<>(prefs.getStringSet("Favorites", new HashSet<>()));
-        String songId = String.valueOf(song.getId());
-
-        if (!favorites.contains(songId)) {
-            favorites.add(songId);
-            prefs.edit().putStringSet("Favorites", favorites).apply();
-            Toast.makeText(this, "Added to Favorites Playlist", Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(this, "Already in Favorites", Toast.LENGTH_SHORT).show();
+    private void addToFavourites(long[] ids) {
+        List<String> members = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            members.add(String.valueOf(id));
         }
+
+        PlaylistStore.getInstance(this).addMembersAsync(PlaylistStore.FAVORITES, members, added -> {
+            if (added > 0) {
+                Toast.makeText(this, "Added to Favorites Playlist", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(this, "Already in Favorites", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 }
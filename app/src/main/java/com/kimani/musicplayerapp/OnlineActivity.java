@@ -1,7 +1,6 @@
 package com.kimani.musicplayerapp;
 
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.Toast;
@@ -13,27 +12,26 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.button.MaterialButton;
 import com.kimani.musicplayerapp.databinding.DialogCreatePlaylistBinding;
-import com.kimani.musicplayerapp.models.PlaylistModel;
+import com.kimani.musicplayerapp.playlist.PlaylistStore;
+import com.kimani.musicplayerapp.playlist.PlaylistSummary;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * OnlineActivity handles the display and management of user-created playlists.
  * It allows users to view existing playlists, create new ones, and navigate to playlist details.
- * Playlists are persisted using SharedPreferences.
+ * Playlists are persisted in the PlaylistStore.
  */
 public class OnlineActivity extends AppCompatActivity {
 
     private RecyclerView playlistRecyclerView;
     private MaterialButton createPlaylistBtn;
     private PlaylistAdapter playlistAdapter;
-    private List<PlaylistModel> playlistList;
+    private List<PlaylistSummary> playlistList;
+    private final PlaylistStore.CatalogListener catalogListener = this::showPlaylists;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -47,8 +45,8 @@ public class OnlineActivity extends AppCompatActivity {
         // Setup the Horizontal RecyclerView for playlists
         setupPlaylistRecyclerView();
         
-        // Initial load of playlists from storage
-        loadPlaylists();
+        // Show the stored playlists, and keep them up to date as they change
+        PlaylistStore.getInstance(this).addCatalogListener(catalogListener);
 
         // Button listener to trigger the 'Create Playlist' dialog
         createPlaylistBtn.setOnClickListener(v -> showCreatePlaylistDialog());
@@ -58,10 +56,9 @@ public class OnlineActivity extends AppCompatActivity {
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        // Refresh the playlist list whenever the activity becomes active again
-        loadPlaylists();
+    protected void onDestroy() {
+        super.onDestroy();
+        PlaylistStore.getInstance(this).removeCatalogListener(catalogListener);
     }
 
     /**
@@ -141,43 +138,30 @@ public class OnlineActivity extends AppCompatActivity {
     }
 
     /**
-     * Saves a new playlist name into SharedPreferences as a key with an empty HashSet.
+     * Saves a new, empty playlist in the PlaylistStore.
      * @param name The name of the new playlist.
      */
     private void savePlaylist(String name) {
-        SharedPreferences prefs = getSharedPreferences("Playlists", MODE_PRIVATE);
-        if (prefs.contains(name)) {
-            Toast.makeText(this, "A playlist with this name already exists", Toast.LENGTH_SHORT).show();
-            return;
-        }
-        // Playlists are stored as StringSets containing song IDs
-        prefs.edit().putStringSet(name, new HashSet<>()).apply();
-        loadPlaylists(); // Refresh the UI
+        PlaylistStore.getInstance(this).createPlaylistAsync(name, created -> {
+            if (created == 0) {
+                Toast.makeText(this, "A playlist with this name already exists", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     /**
-     * Loads all playlists from SharedPreferences and updates the adapter.
+     * Shows the playlist catalog; called when it is first loaded and after every change.
      */
-    private void loadPlaylists() {
-        SharedPreferences prefs = getSharedPreferences("Playlists", MODE_PRIVATE);
-        Map<String, ?> allEntries = prefs.getAll();
-
+    private void showPlaylists(List<PlaylistSummary> catalog) {
         playlistList.clear();
-        for (Map.Entry<String, ?> entry : allEntries.entrySet()) {
-            // We only care about entries that are Sets (our playlists)
-            if (entry.getValue() instanceof Set) {
-                @SuppressWarnings("unchecked")
-                Set<String> idSet = (Set<String>) entry.getValue();
-                List<String> songIds = new ArrayList<>(idSet);
-                playlistList.add(new PlaylistModel(entry.getKey(), songIds));
-            }
-        }
+        playlistList.addAll(catalog);
 
         // Sort playlists alphabetically by name
         Collections.sort(playlistList, (p1, p2) -> p1.getName().compareToIgnoreCase(p2.getName()));
-        
+
         if (playlistAdapter != null) {
             playlistAdapter.notifyDataSetChanged();
+            playlistAdapter.loadCovers();
         }
     }
 }
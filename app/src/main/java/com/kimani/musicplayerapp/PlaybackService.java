@@ -2,14 +2,17 @@ package com.kimani.musicplayerapp;
 import android.app.PendingIntent;
 import android.content.Intent;
 import android.net.Uri;
+import android.util.Log;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.MediaMetadata;
+import androidx.media3.common.Player;
 import androidx.media3.exoplayer.ExoPlayer;
 import androidx.media3.session.LibraryResult;
 import androidx.media3.session.MediaLibraryService;
 import androidx.media3.session.MediaSession;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.kimani.musicplayerapp.search.PlayHistory;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -23,6 +26,11 @@ import java.util.Objects;
  */
 public class PlaybackService extends MediaLibraryService {
 
+    private static final String TAG = "PlaybackService";
+
+    /** Starts the queue registered under {@link QueueRegistry#EXTRA_QUEUE_HANDLE}. */
+    public static final String ACTION_START_QUEUE = "ACTION_START_QUEUE";
+
     private MediaLibrarySession mediaLibrarySession;
     private ExoPlayer player;
 
@@ -32,6 +40,23 @@ public class PlaybackService extends MediaLibraryService {
         
         // Initialize ExoPlayer
         player = new ExoPlayer.Builder(this).build();
+
+        // Count plays so search can rank frequently played tracks higher. Only a track the
+        // queue moved on to, or one the user skipped to, counts: setting a queue
+        // (PLAYLIST_CHANGED, also sent again when the player screen returns) and repeating a
+        // track do not.
+        player.addListener(new Player.Listener() {
+            @Override
+            public void onMediaItemTransition(MediaItem mediaItem, int reason) {
+                if (mediaItem == null) return;
+                if (reason != Player.MEDIA_ITEM_TRANSITION_REASON_AUTO
+                        && reason != Player.MEDIA_ITEM_TRANSITION_REASON_SEEK) return;
+                MediaMetadata metadata = mediaItem.mediaMetadata;
+                PlayHistory.getInstance(PlaybackService.this).recordPlay(
+                        metadata.title != null ? metadata.title.toString() : null,
+                        metadata.artist != null ? metadata.artist.toString() : null);
+            }
+        });
         
         // Initialize MediaLibrarySession with a callback to handle browser interactions
         mediaLibrarySession = new MediaLibrarySession.Builder(this, player, new MediaLibrarySession.Callback() {
@@ -75,34 +100,23 @@ public class PlaybackService extends MediaLibraryService {
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent != null && intent.getAction() != null) {
             String action = intent.getAction();
-            int position = intent.getIntExtra("position", 0);
+            int position = intent.getIntExtra(QueueRegistry.EXTRA_START_INDEX, 0);
             List<MediaItem> mediaItems = new ArrayList<>();
 
-            // Handle starting playback from a playlist (local AudioModel list)
-            if (action.equals("ACTION_START_FROM_PLAYLIST")) {
-                ArrayList<AudioModel> songList = intent.getParcelableArrayListExtra("songList");
-                if (songList != null && !songList.isEmpty()) {
-                    for (AudioModel song : songList) {
-                        mediaItems.add(new MediaItem.Builder()
-                                .setUri(Uri.parse(song.getPath()))
-                                .setMediaMetadata(new MediaMetadata.Builder()
-                                        .setTitle(song.getTitle())
-                                        .setArtist(song.getArtist())
-                                        .build())
-                                .build());
-                    }
-                }
-            } 
-            // Handle starting playback from the main local song list
-            else if (action.equals("ACTION_START_FROM_MAIN")) {
-                ArrayList<Song> songList = intent.getParcelableArrayListExtra("songList");
-                if (songList != null && !songList.isEmpty()) {
-                    for (Song song : songList) {
+            // Handle starting playback from a queue registered by the calling screen
+            if (action.equals(ACTION_START_QUEUE)) {
+                long handle = intent.getLongExtra(QueueRegistry.EXTRA_QUEUE_HANDLE, 0);
+                QueueRegistry.Queue queue = QueueRegistry.get(handle);
+                if (queue == null) {
+                    // The caller restores its queue and registers it again; keep playing meanwhile
+                    Log.w(TAG, "Queue " + handle + " is not registered (evicted, or the process restarted)");
+                } else {
+                    for (int i = 0; i < queue.size(); i++) {
                         mediaItems.add(new MediaItem.Builder()
-                                .setUri(Uri.parse(song.getData()))
+                                .setUri(Uri.parse(queue.getPath(i)))
                                 .setMediaMetadata(new MediaMetadata.Builder()
-                                        .setTitle(song.getTitle())
-                                        .setArtist(song.getArtist())
+                                        .setTitle(queue.getTitle(i))
+                                        .setArtist(queue.getArtist(i))
                                         .build())
                                 .build());
                     }
@@ -5,9 +5,11 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.Log;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.Player;
@@ -17,24 +19,40 @@ import androidx.media3.session.SessionToken;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.kimani.musicplayerapp.databinding.ActivityPlayerBinding;
+import com.kimani.musicplayerapp.library.LibraryRepository;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
  * PlayerActivity is the main UI for controlling music playback.
  * It connects to a {@link PlaybackService} using a {@link MediaController} to manage playback state,
  * update the UI (seekbar, title, artist), and handle user interactions like play/pause, skip, shuffle, and repeat.
+ *
+ * The queue is started once, when the screen is first created. The queue itself only lives in
+ * {@link QueueRegistry}, so the screen saves the members around the current track in its
+ * instance state; if the registry no longer has the queue (the process was restarted, or the
+ * handle was evicted) they are resolved through {@link LibraryRepository} and played again.
  */
 public class PlayerActivity extends AppCompatActivity {
 
+    private static final String TAG = "PlayerActivity";
+    private static final String STATE_MEMBERS = "queueMembers";
+    private static final String STATE_INDEX = "queueIndex";
+    // Saved window around the current track, kept well below the Binder transaction limit
+    private static final int MAX_SAVED_MEMBERS = 500;
+
     private ActivityPlayerBinding binding;
     private ListenableFuture<MediaController> mediaControllerFuture;
     private Handler handler;
     
-    // List used to populate the UI. It can hold data derived from different song models.
-    private List<AudioModel> uiSongList = new ArrayList<>();
+    // Queue being played, shared by reference with PlaybackService through QueueRegistry
+    private QueueRegistry.Queue queue;
+    private long queueHandle;
+    private int currentIndex;
     private boolean isShuffle = false;
     private boolean isRepeat = false;
 
@@ -75,21 +93,21 @@ public class PlayerActivity extends AppCompatActivity {
 
         handler = new Handler(Looper.getMainLooper());
 
-        // Handle incoming song lists which might be of different types depending on the source activity
-        ArrayList<Song> receivedSongList = getIntent().getParcelableArrayListExtra("songList");
-        ArrayList<AudioModel> receivedAudioModelList = getIntent().getParcelableArrayListExtra("songList");
-
-        if (receivedSongList != null && !receivedSongList.isEmpty() && receivedSongList.get(0) instanceof Song) {
-            // Mapping Song objects (from MainActivity) to AudioModel for UI consistency
-            for (Song song : receivedSongList) {
-                uiSongList.add(new AudioModel(song.getData(), song.getTitle(), "0", song.getArtist()));
-            }
-        } else if (receivedAudioModelList != null && !receivedAudioModelList.isEmpty()) {
-            // Directly using AudioModel objects (e.g., from PlaylistDetailsActivity)
-            uiSongList.addAll(receivedAudioModelList);
-        }
-
-        if (uiSongList.isEmpty()) {
+        // Resolve the queue handed over by the calling screen
+        queueHandle = getIntent().getLongExtra(QueueRegistry.EXTRA_QUEUE_HANDLE, 0);
+        queue = QueueRegistry.get(queueHandle);
+        currentIndex = getIntent().getIntExtra(QueueRegistry.EXTRA_START_INDEX, 0);
+
+        List<String> savedMembers = savedInstanceState != null
+                ? savedInstanceState.getStringArrayList(STATE_MEMBERS) : null;
+        if (queue != null && queue.size() > 0) {
+            // Otherwise it is still playing and only the screen was recreated; the controller
+            // reports the current track once connected
+            if (savedInstanceState == null) startQueue(currentIndex);
+        } else if (savedMembers != null && !savedMembers.isEmpty()) {
+            Log.w(TAG, "Queue " + queueHandle + " is gone; restoring " + savedMembers.size() + " saved tracks");
+            restoreQueue(savedMembers, savedInstanceState.getInt(STATE_INDEX));
+        } else {
             Toast.makeText(this, "No Songs Found!", Toast.LENGTH_SHORT).show();
             finish();
             return;
@@ -100,25 +118,58 @@ public class PlayerActivity extends AppCompatActivity {
         setupControls();
     }
 
+    /**
+     * Starts PlaybackService with the queue handle and starting position.
+     */
+    private void startQueue(int index) {
+        Intent serviceIntent = new Intent(this, PlaybackService.class);
+        serviceIntent.setAction(PlaybackService.ACTION_START_QUEUE);
+        serviceIntent.putExtra(QueueRegistry.EXTRA_QUEUE_HANDLE, queueHandle);
+        serviceIntent.putExtra(QueueRegistry.EXTRA_START_INDEX, index);
+        startService(serviceIntent);
+    }
+
+    /**
+     * Rebuilds a queue from saved members on the library's worker thread, registers it and
+     * starts it at the saved track. Members no longer on the device are skipped.
+     */
+    private void restoreQueue(List<String> members, int index) {
+        LibraryRepository.getInstance(this).resolveAsync(members, (songs, unresolved) -> {
+            if (isDestroyed()) return;
+            // Songs come back in library order; restore queue order
+            Map<String, Song> songByMember = new HashMap<>();
+            for (Song song : songs) {
+                songByMember.put(song.getPath(), song);
+                songByMember.put(String.valueOf(song.getId()), song);
+            }
+            ArrayList<Song> restored = new ArrayList<>(members.size());
+            int start = 0;
+            for (int i = 0; i < members.size(); i++) {
+                if (i == index) start = restored.size();
+                Song song = songByMember.get(members.get(i));
+                if (song != null) restored.add(song);
+            }
+            if (!unresolved.isEmpty()) {
+                Log.w(TAG, unresolved.size() + " queued tracks are no longer on the device");
+            }
+            if (restored.isEmpty()) {
+                Toast.makeText(this, "No Songs Found!", Toast.LENGTH_SHORT).show();
+                finish();
+                return;
+            }
+
+            queue = QueueRegistry.ofSongs(restored);
+            queueHandle = QueueRegistry.register(queue);
+            getIntent().putExtra(QueueRegistry.EXTRA_QUEUE_HANDLE, queueHandle);
+            currentIndex = Math.min(start, restored.size() - 1);
+            startQueue(currentIndex);
+        });
+    }
+
     @Override
     protected void onStart() {
         super.onStart();
 
-        // Start PlaybackService and pass the song list and starting position
-        Intent serviceIntent = new Intent(this, PlaybackService.class);
-        ArrayList<Song> songListFromMain = getIntent().getParcelableArrayListExtra("songList");
-
-        // Set action based on data source to help the service handle the intent properly
-        if (songListFromMain != null && !songListFromMain.isEmpty() && songListFromMain.get(0) instanceof Song) {
-            serviceIntent.setAction("ACTION_START_FROM_MAIN");
-            serviceIntent.putParcelableArrayListExtra("songList", songListFromMain);
-        } else {
-            serviceIntent.setAction("ACTION_START_FROM_PLAYLIST");
-            serviceIntent.putParcelableArrayListExtra("songList", getIntent().getParcelableArrayListExtra("songList"));
-        }
-        serviceIntent.putExtra("position", getIntent().getIntExtra("position", 0));
-        startService(serviceIntent);
-
         // Bind to the MediaSession in PlaybackService
         SessionToken sessionToken = new SessionToken(this, new ComponentName(this, PlaybackService.class));
         mediaControllerFuture = new MediaController.Builder(this, sessionToken).buildAsync();
@@ -235,16 +286,16 @@ public class PlayerActivity extends AppCompatActivity {
         }
 
         try {
-            int currentIndex = controller.getCurrentMediaItemIndex();
+            currentIndex = controller.getCurrentMediaItemIndex();
 
-            if (uiSongList != null && !uiSongList.isEmpty() && currentIndex >= 0 && currentIndex < uiSongList.size()) {
-                AudioModel song = uiSongList.get(currentIndex);
+            if (queue != null && currentIndex >= 0 && currentIndex < queue.size()) {
+                String title = queue.getTitle(currentIndex);
 
-                binding.songTitleText.setText(song.getTitle());
+                binding.songTitleText.setText(title);
                 binding.songTitleText.setSelected(true); // Enables marquee effect if text overflows
-                binding.songArtistText.setText(song.getArtist());
+                binding.songArtistText.setText(queue.getArtist(currentIndex));
                 binding.songArtistText.setSelected(true);
-                setTitle(song.getTitle());
+                setTitle(title);
 
                 // Static placeholders for artwork; could be replaced with dynamic loading
                 binding.albumArtPlayerImage.setImageResource(R.drawable.ic_music_note_24);
@@ -288,6 +339,24 @@ public class PlayerActivity extends AppCompatActivity {
         } catch (Exception e) { e.printStackTrace(); }
     }
 
+    /**
+     * Saves up to {@link #MAX_SAVED_MEMBERS} members around the current track, so the queue
+     * can be rebuilt if the registry has lost it when the screen is restored.
+     */
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (queue == null || queue.size() == 0) return;
+        int from = Math.max(0, Math.min(currentIndex - MAX_SAVED_MEMBERS / 2, queue.size() - MAX_SAVED_MEMBERS));
+        int to = Math.min(queue.size(), from + MAX_SAVED_MEMBERS);
+        ArrayList<String> members = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            members.add(queue.getMember(i));
+        }
+        outState.putStringArrayList(STATE_MEMBERS, members);
+        outState.putInt(STATE_INDEX, currentIndex - from);
+    }
+
     @Override
     protected void onStop() {
         super.onStop();
@@ -2,30 +2,33 @@ package com.kimani.musicplayerapp;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.os.Bundle;
-import android.provider.MediaStore;
 import android.util.Log;
 import android.view.View;
+import android.widget.PopupMenu;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.kimani.musicplayerapp.library.LibraryRepository;
+import com.kimani.musicplayerapp.playlist.PlaylistStore;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * Activity that displays the songs within a specific playlist.
- * It allows users to view songs, add new songs via a picker, and start playback.
+ * It allows users to view songs, add new songs via a picker, reorder them by dragging, and
+ * start playback.
  */
 public class PlaylistDetailsActivity extends AppCompatActivity implements MusicAdapter.OnSongClickListener {
 
@@ -36,6 +39,7 @@ public class PlaylistDetailsActivity extends AppCompatActivity implements MusicA
 
     private String playlistName;
     private ArrayList<AudioModel> songsInPlaylist;
+    private final List<String> membersInPlaylist = new ArrayList<>(); // Stored member of each row
     private MusicAdapter musicAdapter;
 
     /**
@@ -51,6 +55,43 @@ public class PlaylistDetailsActivity extends AppCompatActivity implements MusicA
                 }
             });
 
+    /**
+     * Pickers for M3U import and export (Storage Access Framework, no storage permission needed).
+     */
+    private final ActivityResultLauncher<String[]> importLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(),
+            uri -> {
+                if (uri == null) return;
+                Toast.makeText(this, "Importing playlist...", Toast.LENGTH_SHORT).show();
+                PlaylistStore.getInstance(this).importM3uAsync(uri, playlistName, result -> {
+                    if (isDestroyed()) return;
+                    if (result == null) {
+                        Toast.makeText(this, "Could not read the playlist file", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    if (result.unresolvedCount > 0) {
+                        Log.d("PlaylistDetails", "Not in library: " + result.unresolved);
+                    }
+                    Toast.makeText(this, result.entries + " song(s) imported, "
+                            + result.unresolvedCount + " not found on this device", Toast.LENGTH_LONG).show();
+                    loadSongsForPlaylist();
+                });
+            });
+
+    private final ActivityResultLauncher<String> exportLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("audio/x-mpegurl"),
+            uri -> {
+                if (uri == null) return;
+                PlaylistStore.getInstance(this).exportM3uAsync(playlistName, uri, result -> {
+                    if (isDestroyed()) return;
+                    if (result == null) {
+                        Toast.makeText(this, "Could not write the playlist file", Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(this, result.entries + " song(s) exported", Toast.LENGTH_SHORT).show();
+                    }
+                });
+            });
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -68,8 +109,14 @@ public class PlaylistDetailsActivity extends AppCompatActivity implements MusicA
             playlistNameTitle.setText(playlistName);
         }
 
+        // Long-press the title for M3U import and export
+        playlistNameTitle.setOnLongClickListener(v -> {
+            showTransferMenu(v);
+            return true;
+        });
+
         setupRecyclerView();
-        loadSongsForPlaylist(); // Initial load of songs from SharedPreferences
+        loadSongsForPlaylist(); // Initial load of songs from the PlaylistStore
 
         // FAB to open the song picker activity
         addSongsFab.setOnClickListener(v -> {
@@ -79,6 +126,25 @@ public class PlaylistDetailsActivity extends AppCompatActivity implements MusicA
         });
     }
 
+    /**
+     * Offers importing songs from an M3U/M3U8 file into this playlist, or exporting it to one.
+     */
+    private void showTransferMenu(View anchor) {
+        PopupMenu menu = new PopupMenu(this, anchor);
+        menu.getMenu().add(0, 1, 0, "Import from M3U file");
+        menu.getMenu().add(0, 2, 1, "Export to M3U file");
+        menu.setOnMenuItemClickListener(item -> {
+            if (item.getItemId() == 1) {
+                importLauncher.launch(new String[]{"audio/x-mpegurl", "audio/mpegurl", "application/vnd.apple.mpegurl",
+                        "application/x-mpegurl", "text/plain", "application/octet-stream"});
+            } else {
+                exportLauncher.launch(playlistName + ".m3u8");
+            }
+            return true;
+        });
+        menu.show();
+    }
+
     /**
      * Initializes the RecyclerView and its adapter.
      */
@@ -88,72 +154,116 @@ public class PlaylistDetailsActivity extends AppCompatActivity implements MusicA
         musicAdapter = new MusicAdapter(this, songsInPlaylist, this);
         playlistSongsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         playlistSongsRecyclerView.setAdapter(musicAdapter);
+        new ItemTouchHelper(new ReorderCallback()).attachToRecyclerView(playlistSongsRecyclerView);
     }
 
     /**
-     * Loads songs associated with this playlist from SharedPreferences and fetches their metadata from MediaStore.
+     * Drag-to-reorder. Rows move in the list while dragging; on drop, the moved song is saved
+     * once, between its new neighbours, which rewrites only that song's entry.
      */
-    private void loadSongsForPlaylist() {
-        songsInPlaylist.clear();
+    private class ReorderCallback extends ItemTouchHelper.SimpleCallback {
+        private int dragFrom = RecyclerView.NO_POSITION;
+        private int dragTo = RecyclerView.NO_POSITION;
 
-        // Retrieve song paths stored for this playlist
-        SharedPreferences sharedPreferences = getSharedPreferences("Playlists", MODE_PRIVATE);
-        Set<String> songPaths = sharedPreferences.getStringSet(playlistName, new HashSet<>());
+        ReorderCallback() {
+            super(ItemTouchHelper.UP | ItemTouchHelper.DOWN, 0);
+        }
 
-        Log.d("PlaylistDetails", "Loading " + songPaths.size() + " songs for playlist: " + playlistName);
+        @Override
+        public boolean onMove(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder from,
+                              @NonNull RecyclerView.ViewHolder to) {
+            int fromPosition = from.getAdapterPosition();
+            int toPosition = to.getAdapterPosition();
+            if (fromPosition == RecyclerView.NO_POSITION || toPosition == RecyclerView.NO_POSITION) return false;
+            if (dragFrom == RecyclerView.NO_POSITION) dragFrom = fromPosition;
+            dragTo = toPosition;
+            songsInPlaylist.add(toPosition, songsInPlaylist.remove(fromPosition));
+            membersInPlaylist.add(toPosition, membersInPlaylist.remove(fromPosition));
+            musicAdapter.notifyItemMoved(fromPosition, toPosition);
+            return true;
+        }
 
-        if (!songPaths.isEmpty()) {
-            // Build the SQL selection string and arguments for MediaStore query
-            String[] selectionArgs = songPaths.toArray(new String[0]);
-            StringBuilder selection = new StringBuilder();
-            for (int i = 0; i < songPaths.size(); i++) {
-                selection.append(MediaStore.Audio.Media.DATA).append("=?");
-                if (i < songPaths.size() - 1) {
-                    selection.append(" OR ");
-                }
-            }
+        @Override
+        public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int direction) {
+            // Swiping is disabled: a removal without confirmation is too easy to trigger
+        }
 
-            String[] projection = {
-                    MediaStore.Audio.Media.DATA,
-                    MediaStore.Audio.Media.TITLE,
-                    MediaStore.Audio.Media.DURATION,
-                    MediaStore.Audio.Media.ARTIST,
-            };
-
-            // Query MediaStore for metadata of the files in the playlist
-            Cursor cursor = getContentResolver().query(
-                    MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                    projection,
-                    selection.toString(),
-                    selectionArgs,
-                    null
-            );
-
-            if (cursor != null) {
-                while (cursor.moveToNext()) {
-                    songsInPlaylist.add(new AudioModel(
-                            cursor.getString(0),
-                            cursor.getString(1),
-                            cursor.getString(2),
-                            cursor.getString(3)
-                    ));
-                }
-                cursor.close();
+        @Override
+        public void clearView(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder) {
+            super.clearView(recyclerView, viewHolder);
+            if (dragFrom != RecyclerView.NO_POSITION && dragFrom != dragTo) {
+                saveMove(dragTo);
             }
+            dragFrom = RecyclerView.NO_POSITION;
+            dragTo = RecyclerView.NO_POSITION;
         }
+    }
 
-        // Toggle visibility between RecyclerView and the empty state view
-        if (songsInPlaylist.isEmpty()) {
-            playlistSongsRecyclerView.setVisibility(View.GONE);
-            emptyPlaylistView.setVisibility(View.VISIBLE);
-            emptyPlaylistView.setText("Playlist is empty. Tap the '+' button to add songs!");
-        } else {
-            playlistSongsRecyclerView.setVisibility(View.VISIBLE);
-            emptyPlaylistView.setVisibility(View.GONE);
-        }
+    /**
+     * Stores the song now at this position between its neighbours.
+     */
+    private void saveMove(int position) {
+        String member = membersInPlaylist.get(position);
+        String before = position > 0 ? membersInPlaylist.get(position - 1) : null;
+        String after = position + 1 < membersInPlaylist.size() ? membersInPlaylist.get(position + 1) : null;
+        PlaylistStore.getInstance(this).moveMemberAsync(playlistName, member, before, after, moved -> {
+            if (moved == 0 && !isDestroyed()) {
+                Log.e("PlaylistDetails", "Failed to save the new order; reloading");
+                loadSongsForPlaylist();
+            }
+        });
+    }
 
-        musicAdapter.notifyDataSetChanged();
-        Log.d("PlaylistDetails", "Adapter notified. Total songs in list: " + songsInPlaylist.size());
+    /**
+     * Loads the songs stored for this playlist from the PlaylistStore and resolves them against
+     * the shared in-memory library, both on background threads.
+     */
+    private void loadSongsForPlaylist() {
+        PlaylistStore.getInstance(this).loadMembersAsync(playlistName, this::resolveSongs);
+    }
+
+    private void resolveSongs(List<String> songPaths) {
+        if (isDestroyed()) return;
+        Log.d("PlaylistDetails", "Loading " + songPaths.size() + " songs for playlist: " + playlistName);
+
+        LibraryRepository.getInstance(this).resolveAsync(songPaths, (songs, unresolved) -> {
+            if (isDestroyed()) return;
+            // Songs come back in library order; list them in playlist order
+            Map<String, Song> songByMember = new HashMap<>();
+            for (Song song : songs) {
+                songByMember.put(song.getPath(), song);
+                songByMember.put(String.valueOf(song.getId()), song);
+            }
+            songsInPlaylist.clear();
+            membersInPlaylist.clear();
+            for (String member : songPaths) {
+                Song song = songByMember.get(member);
+                if (song == null) continue;
+                songsInPlaylist.add(new AudioModel(
+                        song.getPath(),
+                        song.getTitle(),
+                        String.valueOf(song.getDuration()),
+                        song.getArtist()
+                ));
+                membersInPlaylist.add(member);
+            }
+            if (!unresolved.isEmpty()) {
+                Log.d("PlaylistDetails", unresolved.size() + " playlist entries are no longer on the device");
+            }
+
+            // Toggle visibility between RecyclerView and the empty state view
+            if (songsInPlaylist.isEmpty()) {
+                playlistSongsRecyclerView.setVisibility(View.GONE);
+                emptyPlaylistView.setVisibility(View.VISIBLE);
+                emptyPlaylistView.setText("Playlist is empty. Tap the '+' button to add songs!");
+            } else {
+                playlistSongsRecyclerView.setVisibility(View.VISIBLE);
+                emptyPlaylistView.setVisibility(View.GONE);
+            }
+
+            musicAdapter.notifyDataSetChanged();
+            Log.d("PlaylistDetails", "Adapter notified. Total songs in list: " + songsInPlaylist.size());
+        });
     }
 
     /**
@@ -167,12 +277,12 @@ public class PlaylistDetailsActivity extends AppCompatActivity implements MusicA
 
         Intent intent = new Intent(this, PlayerActivity.class);
 
-        // Signal to PlayerActivity that playback is starting from a playlist context
-        intent.setAction("ACTION_START_FROM_PLAYLIST");
-
-        // Pass the playlist and the selected starting position
-        intent.putParcelableArrayListExtra("songList", songsInPlaylist);
-        intent.putExtra("position", position);
+        // Pass a handle to the playlist and the selected starting position. The queue gets its
+        // own copy of the list: songsInPlaylist is refilled when the screen resumes and changed
+        // by edits, while the queue is read by reference for as long as it plays.
+        QueueRegistry.Queue queue = QueueRegistry.ofAudioModels(new ArrayList<>(songsInPlaylist));
+        intent.putExtra(QueueRegistry.EXTRA_QUEUE_HANDLE, QueueRegistry.register(queue));
+        intent.putExtra(QueueRegistry.EXTRA_START_INDEX, position);
 
         startActivity(intent);
     }
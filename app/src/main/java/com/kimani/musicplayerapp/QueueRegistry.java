@@ -0,0 +1,111 @@
+package com.kimani.musicplayerapp;
+
+import com.kimani.musicplayerapp.library.SongStore;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * QueueRegistry is an app-scoped table of playback queues.
+ * Screens register the list they want to play and pass only the returned handle and a start
+ * index through Intents; {@link PlayerActivity} and {@link PlaybackService} run in the same
+ * process and read the queue by reference, so no list is ever copied through Binder.
+ *
+ * The registry does not outlive the process, and only the newest queues are kept. A screen that
+ * must survive either saves the {@link Queue#getMember(int) members} of its queue and resolves
+ * them through {@link com.kimani.musicplayerapp.library.LibraryRepository} again.
+ */
+public final class QueueRegistry {
+
+    /** Intent extra holding the handle returned by {@link #register(Queue)}. */
+    public static final String EXTRA_QUEUE_HANDLE = "queueHandle";
+    /** Intent extra holding the index to start playing from. */
+    public static final String EXTRA_START_INDEX = "position";
+
+    // Only the most recent queues are kept; older handles can no longer be started
+    private static final int MAX_QUEUES = 4;
+
+    private static final Map<Long, Queue> queues = new LinkedHashMap<Long, Queue>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Queue> eldest) {
+            return size() > MAX_QUEUES;
+        }
+    };
+    private static long nextHandle = 1;
+
+    private QueueRegistry() {}
+
+    /**
+     * A read-only, index-addressed list of tracks to play.
+     */
+    public interface Queue {
+        int size();
+        String getPath(int index);
+        String getTitle(int index);
+        String getArtist(int index);
+
+        /**
+         * @return How the track is found again in the library after a restart: its MediaStore
+         * id, or its path where the id is not known.
+         */
+        String getMember(int index);
+    }
+
+    /**
+     * Registers a queue.
+     * @return The handle to pass as {@link #EXTRA_QUEUE_HANDLE}.
+     */
+    public static synchronized long register(Queue queue) {
+        long handle = nextHandle++;
+        queues.put(handle, queue);
+        return handle;
+    }
+
+    /**
+     * @return The queue for the handle, or null if it is unknown (e.g. the process was restarted).
+     */
+    public static synchronized Queue get(long handle) {
+        return queues.get(handle);
+    }
+
+    /**
+     * Wraps an immutable library view; the view is shared, not copied.
+     */
+    public static Queue of(SongStore songs) {
+        return new Queue() {
+            @Override public int size() { return songs.size(); }
+            @Override public String getPath(int index) { return songs.getPath(index); }
+            @Override public String getTitle(int index) { return songs.getTitle(index); }
+            @Override public String getArtist(int index) { return songs.getArtist(index); }
+            @Override public String getMember(int index) { return String.valueOf(songs.getId(index)); }
+        };
+    }
+
+    /**
+     * Wraps a list of songs, e.g. a single search result.
+     */
+    public static Queue ofSongs(List<Song> songs) {
+        return new Queue() {
+            @Override public int size() { return songs.size(); }
+            @Override public String getPath(int index) { return songs.get(index).getPath(); }
+            @Override public String getTitle(int index) { return songs.get(index).getTitle(); }
+            @Override public String getArtist(int index) { return songs.get(index).getArtist(); }
+            // Online results carry a stand-in id, so only the path finds them again
+            @Override public String getMember(int index) { return songs.get(index).getPath(); }
+        };
+    }
+
+    /**
+     * Wraps a list of playlist entries. The caller must not modify the list afterwards.
+     */
+    public static Queue ofAudioModels(List<AudioModel> songs) {
+        return new Queue() {
+            @Override public int size() { return songs.size(); }
+            @Override public String getPath(int index) { return songs.get(index).getPath(); }
+            @Override public String getTitle(int index) { return songs.get(index).getTitle(); }
+            @Override public String getArtist(int index) { return songs.get(index).getArtist(); }
+            @Override public String getMember(int index) { return songs.get(index).getPath(); }
+        };
+    }
+}
@@ -1,10 +1,11 @@
 package com.kimani.musicplayerapp;
 
+import android.app.SearchManager;
 import android.content.Intent;
 import android.database.Cursor;
-import android.net.Uri;
+import android.database.MatrixCursor;
 import android.os.Bundle;
-import android.provider.MediaStore;
+import android.provider.BaseColumns;
 import android.view.View;
 import android.widget.Toast;
 
@@ -14,28 +15,39 @@ import androidx.appcompat.widget.SearchView;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
+import androidx.cursoradapter.widget.SimpleCursorAdapter;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.kimani.musicplayerapp.Adapter.SongAdapter;
 import com.kimani.musicplayerapp.models.TrackInfo;
+import com.kimani.musicplayerapp.search.AutocompleteEngine;
+import com.kimani.musicplayerapp.search.LocalSearchEngine;
+import com.kimani.musicplayerapp.search.RemoteSongSearch;
+import com.kimani.musicplayerapp.search.ResultRanker;
+import com.kimani.musicplayerapp.search.SearchScheduler;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * SearchActivity provides functionality to search for songs both locally on the device
- * and online via Firebase Firestore. It updates the UI in real-time as the user types.
+ * and online via Firebase Firestore. It updates the UI in real-time as the user types;
+ * keystrokes go through a {@link SearchScheduler}, which debounces them and drops stale results.
+ * Results are submitted to the adapter as new lists and diffed in the background, so only rows
+ * that changed between keystrokes are rebound. While typing, the SearchView also offers
+ * completions (titles, artists, playlists) from the {@link AutocompleteEngine}.
  */
 public class SearchActivity extends AppCompatActivity implements SongAdapter.OnItemClickListener, SongAdapter.OnItemLongClickListener {
 
     private RecyclerView recyclerView;
     private SongAdapter adapter;
-    private List<TrackInfo> displayList = new ArrayList<>(); // List used to update the UI
-    private List<Song> localSongs = new ArrayList<>();       // Cache of all local songs
-    private FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private SearchScheduler scheduler; // Debounces keystrokes, drops stale results
+    private SearchView searchView;
+    private AutocompleteEngine autocomplete;
+    private SimpleCursorAdapter suggestionsAdapter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -51,36 +63,60 @@ public class SearchActivity extends AppCompatActivity implements SongAdapter.OnI
             return insets;
         });
 
-        // Pre-fetch local songs for faster filtering during search
-        localSongs = getLocalSongs();
+        // Build the local search index in the background before the first keystroke
+        LocalSearchEngine localSearch = LocalSearchEngine.getInstance(this);
+        localSearch.warmUp();
+        scheduler = new SearchScheduler(localSearch,
+                new RemoteSongSearch(FirebaseFirestore.getInstance()), this::showResults);
 
         // Initialize RecyclerView
         recyclerView = findViewById(R.id.search_results_recycler_view);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
 
-        // Setup adapter with an empty list initially
-        adapter = new SongAdapter(displayList, this, this);
+        // Setup adapter; it starts with an empty list
+        adapter = new SongAdapter(this, this);
         recyclerView.setAdapter(adapter);
 
-        // Configure the SearchView
-        SearchView searchView = findViewById(R.id.search_view);
+        // Configure the SearchView, with completions shown under it while typing
+        searchView = findViewById(R.id.search_view);
+        autocomplete = AutocompleteEngine.getInstance(this);
+        suggestionsAdapter = new SimpleCursorAdapter(this, android.R.layout.simple_list_item_1, null,
+                new String[]{SearchManager.SUGGEST_COLUMN_TEXT_1}, new int[]{android.R.id.text1}, 0);
+        searchView.setSuggestionsAdapter(suggestionsAdapter);
+        searchView.setOnSuggestionListener(new SearchView.OnSuggestionListener() {
+            @Override
+            public boolean onSuggestionSelect(int position) {
+                return false;
+            }
+
+            @Override
+            public boolean onSuggestionClick(int position) {
+                Cursor cursor = suggestionsAdapter.getCursor();
+                if (cursor != null && cursor.moveToPosition(position)) {
+                    searchView.setQuery(cursor.getString(1), true);
+                }
+                return true;
+            }
+        });
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
             public boolean onQueryTextSubmit(String query) {
                 // Trigger search when the keyboard search button is pressed
-                performSearch(query);
+                scheduler.submitNow(query);
                 return true;
             }
 
             @Override
             public boolean onQueryTextChange(String newText) {
-                // Trigger real-time search as the user types
+                // Trigger real-time search as the user types (debounced)
                 if (newText.length() > 0) {
-                    performSearch(newText);
+                    scheduler.submit(newText);
+                    autocomplete.suggestAsync(newText, SearchActivity.this::showSuggestions);
                 } else {
                     // Clear results if the search field is empty
-                    displayList.clear();
-                    adapter.notifyDataSetChanged();
+                    scheduler.cancel();
+                    suggestionsAdapter.changeCursor(null);
+                    adapter.submitList(Collections.emptyList());
                     recyclerView.setVisibility(View.GONE);
                 }
                 return true;
@@ -88,83 +124,34 @@ public class SearchActivity extends AppCompatActivity implements SongAdapter.OnI
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        scheduler.cancel();
+        suggestionsAdapter.changeCursor(null);
+    }
+
     /**
-     * Executes the search logic. Filters local songs first, then queries Firestore for online songs.
-     * @param query The search string entered by the user.
+     * Shows completions for the prefix, unless the user has typed on since it was requested.
      */
-    private void performSearch(String query) {
-        displayList.clear();
-        String lowerQuery = query.toLowerCase();
-
-        // --- Phase 1: Search Local Songs ---
-        for (Song s : localSongs) {
-            // Check if title or artist matches the query
-            if (s.getTitle().toLowerCase().contains(lowerQuery) ||
-                    s.getArtist().toLowerCase().contains(lowerQuery)) {
-                displayList.add(new TrackInfo(
-                        String.valueOf(s.getId()),
-                        s.getTitle(),
-                        s.getArtist(),
-                        s.getPath(),
-                        "" // Thumbnail can be added here if available
-                ));
-            }
+    private void showSuggestions(String prefix, List<String> suggestions) {
+        if (isDestroyed() || !prefix.equals(searchView.getQuery().toString())) return;
+        MatrixCursor cursor = new MatrixCursor(new String[]{BaseColumns._ID, SearchManager.SUGGEST_COLUMN_TEXT_1});
+        for (int i = 0; i < suggestions.size(); i++) {
+            cursor.addRow(new Object[]{i, suggestions.get(i)});
         }
-
-        // --- Phase 2: Search Online (Firebase Firestore) ---
-        // Uses a range query to find titles starting with the query string
-        db.collection("songs")
-                .whereGreaterThanOrEqualTo("title", query)
-                .whereLessThanOrEqualTo("title", query + "\uf8ff")
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        for (QueryDocumentSnapshot document : task.getResult()) {
-                            TrackInfo track = document.toObject(TrackInfo.class);
-                            
-                            // Prevent duplicates if a local song has the same ID as an online one
-                            boolean isDuplicate = false;
-                            for (TrackInfo existing : displayList) {
-                                if (existing.getId().equals(track.getId())) {
-                                    isDuplicate = true;
-                                    break;
-                                }
-                            }
-                            if (!isDuplicate) displayList.add(track);
-                        }
-                    }
-
-                    // Update UI if results were found
-                    if (!displayList.isEmpty()) {
-                        recyclerView.setVisibility(View.VISIBLE);
-                        adapter.notifyDataSetChanged();
-                    }
-                });
+        suggestionsAdapter.changeCursor(cursor);
     }
 
     /**
-     * Queries MediaStore for all audio files on the device.
-     * @return List of Song objects.
+     * Shows the results of the latest query. Local matches arrive ranked and cut to
+     * {@link ResultRanker#DEFAULT_LIMIT}; online matches are merged into that short list.
+     * @param remote Online matches, or null while they are still loading.
      */
-    private List<Song> getLocalSongs() {
-        List<Song> songs = new ArrayList<>();
-        Uri uri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-        String[] projection = {
-                MediaStore.Audio.Media._ID, MediaStore.Audio.Media.TITLE,
-                MediaStore.Audio.Media.ARTIST, MediaStore.Audio.Media.DATA,
-                MediaStore.Audio.Media.ALBUM_ID
-        };
-
-        try (Cursor cursor = getContentResolver().query(uri, projection, MediaStore.Audio.Media.IS_MUSIC + "!=0", null, null)) {
-            if (cursor != null) {
-                while (cursor.moveToNext()) {
-                    songs.add(new Song(
-                            cursor.getLong(0), cursor.getString(1),
-                            cursor.getString(2), cursor.getString(3), cursor.getLong(4)));
-                }
-            }
-        }
-        return songs;
+    private void showResults(String query, ResultRanker local, List<TrackInfo> remote) {
+        List<TrackInfo> results = remote == null ? local.results() : local.results(remote);
+        recyclerView.setVisibility(results.isEmpty() ? View.GONE : View.VISIBLE);
+        adapter.submitList(results);
     }
 
     /**
@@ -196,8 +183,8 @@ public class SearchActivity extends AppCompatActivity implements SongAdapter.OnI
 
         // Launch PlayerActivity with the single selected song
         Intent intent = new Intent(this, PlayerActivity.class);
-        intent.putParcelableArrayListExtra("songList", singleSongList);
-        intent.putExtra("position", 0);
+        intent.putExtra(QueueRegistry.EXTRA_QUEUE_HANDLE, QueueRegistry.register(QueueRegistry.ofSongs(singleSongList)));
+        intent.putExtra(QueueRegistry.EXTRA_START_INDEX, 0);
         startActivity(intent);
 
         Toast.makeText(this, "Playing: " + track.getTitle(), Toast.LENGTH_SHORT).show();
@@ -15,16 +15,25 @@ public class Song implements Parcelable {
     private String artist;        // Name of the artist/performer
     private final String data;    // Absolute file path on storage
     private final long albumId;   // ID of the album this song belongs to
+    private final long duration;  // Length of the track in milliseconds (0 if unknown)
 
     /**
      * Constructor to initialize a Song object.
      */
     public Song(long id, String title, String artist, String data, long albumId) {
+        this(id, title, artist, data, albumId, 0);
+    }
+
+    /**
+     * Constructor used by the library scanner, which also knows the track duration.
+     */
+    public Song(long id, String title, String artist, String data, long albumId, long duration) {
         this.id = id;
         this.title = title;
         this.artist = artist;
         this.data = data;
         this.albumId = albumId;
+        this.duration = duration;
     }
 
     // --- GETTER METHODS ---
@@ -44,6 +53,8 @@ public class Song implements Parcelable {
     
     public long getAlbumId() { return albumId; }
 
+    public long getDuration() { return duration; }
+
     // --- SETTER METHODS ---
     
     /**
@@ -71,6 +82,7 @@ public class Song implements Parcelable {
         artist = in.readString();
         data = in.readString();
         albumId = in.readLong();
+        duration = in.readLong();
     }
 
     @Override
@@ -81,6 +93,7 @@ public class Song implements Parcelable {
         dest.writeString(artist);
         dest.writeString(data);
         dest.writeLong(albumId);
+        dest.writeLong(duration);
     }
 
     @Override
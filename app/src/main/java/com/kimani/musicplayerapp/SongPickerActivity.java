@@ -2,10 +2,7 @@ package com.kimani.musicplayerapp;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.os.Bundle;
-import android.provider.MediaStore;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
@@ -16,10 +13,11 @@ import androidx.appcompat.widget.Toolbar;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.kimani.musicplayerapp.library.LibraryRepository;
+import com.kimani.musicplayerapp.playlist.PlaylistStore;
+
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * SongPickerActivity allows the user to browse all music files on their device 
@@ -82,40 +80,28 @@ public class SongPickerActivity extends AppCompatActivity {
     }
 
     /**
-     * Queries the MediaStore ContentProvider to retrieve a list of all 
-     * music files available on the device's external storage.
+     * Fills the picker from the shared library repository instead of running
+     * a separate MediaStore scan. Rows arrive in chunks from a background thread.
      */
     private void loadAllSongs() {
-        String[] projection = {
-                MediaStore.Audio.Media.DATA, // File path
-                MediaStore.Audio.Media.TITLE,
-                MediaStore.Audio.Media.DURATION,
-                MediaStore.Audio.Media.ARTIST,
-        };
-
-        // Filter for music files only
-        String selection = MediaStore.Audio.Media.IS_MUSIC + " != 0";
-
-        Cursor cursor = getContentResolver().query(
-                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                projection,
-                selection,
-                null,
-                null
-        );
-
-        if (cursor != null) {
-            while (cursor.moveToNext()) {
+        LibraryRepository.getInstance(this).loadAsync((songs, firstNewRow, complete) -> {
+            if (isDestroyed()) return;
+            if (firstNewRow == 0) allSongsList.clear();
+            int start = allSongsList.size();
+            for (int i = start; i < songs.size(); i++) {
                 allSongsList.add(new AudioModel(
-                        cursor.getString(0),
-                        cursor.getString(1),
-                        cursor.getString(2),
-                        cursor.getString(3)
+                        songs.getPath(i),
+                        songs.getTitle(i),
+                        String.valueOf(songs.getDuration(i)),
+                        songs.getArtist(i)
                 ));
             }
-            cursor.close();
-            songPickerAdapter.notifyDataSetChanged();
-        }
+            if (firstNewRow == 0) {
+                songPickerAdapter.notifyDataSetChanged();
+            } else if (songs.size() > start) {
+                songPickerAdapter.notifyItemRangeInserted(start, songs.size() - start);
+            }
+        });
     }
 
     @Override
@@ -143,8 +129,8 @@ public class SongPickerActivity extends AppCompatActivity {
     }
 
     /**
-     * Saves the selected songs' paths into SharedPreferences under the current playlist's key.
-     * Merges new selections with existing songs already in the playlist.
+     * Saves the selected songs' paths to the current playlist in the PlaylistStore.
+     * Songs already in the playlist are kept; duplicates are ignored.
      */
     private void saveSongsToPlaylist() {
         if (songsToAdd.isEmpty()) {
@@ -152,27 +138,19 @@ public class SongPickerActivity extends AppCompatActivity {
             return;
         }
 
-        SharedPreferences sharedPreferences = getSharedPreferences("Playlists", MODE_PRIVATE);
-        
-        // Retrieve existing songs in this playlist to avoid losing them
-        Set<String> existingSongPaths = sharedPreferences.getStringSet(playlistName, new HashSet<>());
-        Set<String> newSongPaths = new HashSet<>(existingSongPaths);
-
         // Add the paths of newly selected songs
+        List<String> newSongPaths = new ArrayList<>(songsToAdd.size());
         for (AudioModel song : songsToAdd) {
             newSongPaths.add(song.getPath());
         }
 
-        // Commit the updated set back to SharedPreferences
-        sharedPreferences.edit()
-                .putStringSet(playlistName, newSongPaths)
-                .apply();
-
-        Toast.makeText(this, songsToAdd.size() + " song(s) added.", Toast.LENGTH_SHORT).show();
+        PlaylistStore.getInstance(this).addMembersAsync(playlistName, newSongPaths, added -> {
+            Toast.makeText(this, songsToAdd.size() + " song(s) added.", Toast.LENGTH_SHORT).show();
 
-        // Signal success to the calling activity (PlaylistDetailsActivity)
-        Intent resultIntent = new Intent();
-        setResult(Activity.RESULT_OK, resultIntent);
-        finish();
+            // Signal success to the calling activity (PlaylistDetailsActivity)
+            Intent resultIntent = new Intent();
+            setResult(Activity.RESULT_OK, resultIntent);
+            finish();
+        });
     }
 }
@@ -0,0 +1,49 @@
+package com.kimani.musicplayerapp.library;
+
+import com.kimani.musicplayerapp.Song;
+
+/**
+ * LibraryChange describes one row that was inserted, updated or removed in the local library.
+ * Screens apply these to their own lists instead of reloading the whole library. Row positions
+ * are relative to the library as it was after the previous change in the same batch.
+ */
+public class LibraryChange {
+
+    public enum Type { INSERT, UPDATE, REMOVE }
+
+    private final Type type;
+    private final Song oldSong;  // Null for INSERT
+    private final Song newSong;  // Null for REMOVE
+    private final int oldRow;    // -1 for INSERT
+    private final int newRow;    // -1 for REMOVE
+
+    LibraryChange(Type type, Song oldSong, Song newSong, int oldRow, int newRow) {
+        this.type = type;
+        this.oldSong = oldSong;
+        this.newSong = newSong;
+        this.oldRow = oldRow;
+        this.newRow = newRow;
+    }
+
+    public Type getType() { return type; }
+
+    /**
+     * @return The song as it was before the change.
+     */
+    public Song getOldSong() { return oldSong; }
+
+    /**
+     * @return The song as it is after the change.
+     */
+    public Song getNewSong() { return newSong; }
+
+    /**
+     * @return The row the song occupied before the change, or -1 for an insert.
+     */
+    public int getOldRow() { return oldRow; }
+
+    /**
+     * @return The row the song occupies after the change, or -1 for a removal.
+     */
+    public int getNewRow() { return newRow; }
+}
@@ -0,0 +1,950 @@
+package com.kimani.musicplayerapp.library;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.OperationApplicationException;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.kimani.musicplayerapp.Song;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * LibraryRepository is the single, process-wide owner of the local music library.
+ * The first call scans MediaStore once; later calls only pull the rows that changed since the
+ * previous sync (using MediaStore generations on Android 11+ and DATE_MODIFIED before that),
+ * so screens that need the library no longer pay for a full cursor scan each time they open.
+ *
+ * Screens should use {@link #loadAsync(LoadListener)}: the scan runs on a background thread and
+ * the cursor is read in chunks, so the first screenful is delivered before the rest is read.
+ * While at least one {@link ChangeListener} is registered, a ContentObserver turns MediaStore
+ * notifications into {@link LibraryChange} deltas so that edits never trigger a full reload.
+ *
+ * The library is also persisted as a {@link LibrarySnapshot}. On a cold start the snapshot is
+ * memory-mapped and delivered first, then the MediaStore generation check corrects any drift.
+ *
+ * Rows are held in a columnar {@link MutableSongStore}; listeners receive immutable
+ * {@link SongStore} views and bind rows by index.
+ *
+ * On devices with several storage volumes (SD card, USB drive), the full scan reads each volume
+ * in parallel through a {@link VolumeScanner} and merges the results. A volume that is
+ * unmounted or mounted again is refreshed on its own.
+ */
+public class LibraryRepository {
+
+    /**
+     * Receives the library on the main thread as it is read.
+     */
+    public interface LoadListener {
+        /**
+         * @param songs       The library read so far, in title order.
+         * @param firstNewRow Rows before this index were already delivered by this load and are
+         *                    unchanged; 0 means everything must be redrawn.
+         * @param complete    True if this is the last call for this load.
+         */
+        void onSongsLoaded(SongStore songs, int firstNewRow, boolean complete);
+    }
+
+    /**
+     * Receives incremental library changes on the main thread.
+     */
+    public interface ChangeListener {
+        /**
+         * @param songs   The library after all changes were applied.
+         * @param changes The changes, in the order they were applied.
+         */
+        void onLibraryChanged(SongStore songs, List<LibraryChange> changes);
+    }
+
+    /**
+     * Receives resolved playlist members on the main thread.
+     */
+    public interface ResolveListener {
+        /**
+         * @param songs      The members found, library members in title order first.
+         * @param unresolved Members that no longer exist on the device.
+         */
+        void onResolved(List<Song> songs, List<String> unresolved);
+    }
+
+    /**
+     * Receives the outcome of a batched edit on the main thread.
+     */
+    public interface EditListener {
+        /**
+         * @param affected Number of rows MediaStore reported as updated or deleted.
+         */
+        void onEditApplied(int affected);
+    }
+
+    private static LibraryRepository instance;
+
+    private static final String TAG = "LibraryRepository";
+    private static final String SNAPSHOT_FILE = "library.snapshot";
+
+    // Stays well below SQLite's 999 bound-variable limit on older devices
+    private static final int MAX_ARGS_PER_QUERY = 500;
+
+    // Small first page so the list can draw immediately, then larger chunks for throughput
+    private static final int FIRST_PAGE_SIZE = 40;
+    private static final int CHUNK_SIZE = 500;
+
+    private static final Uri AUDIO_URI = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+    public static final String MUSIC_SELECTION = MediaStore.Audio.Media.IS_MUSIC + "!=0";
+    static final String SORT_ORDER = MediaStore.Audio.Media.TITLE + " ASC";
+    static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID, MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST, MediaStore.Audio.Media.DATA,
+            MediaStore.Audio.Media.ALBUM_ID, MediaStore.Audio.Media.DURATION
+    };
+
+    // Outcome of a sync, used to decide what still has to be sent to a LoadListener
+    private enum SyncResult { STREAMED, CHANGED, UNCHANGED }
+
+    private final ContentResolver resolver;
+    private final Context appContext;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final File snapshotFile;
+
+    private final MutableSongStore store = new MutableSongStore(); // Kept in SongOrder.BY_TITLE order
+    private final VolumeScanner volumeScanner;
+    private Set<String> knownVolumes;                               // Volumes the store reflects
+    private final Map<String, long[]> volumeIds = new HashMap<>();  // Sorted ids per scanned volume
+
+    private boolean loaded = false;
+    private String mediaStoreVersion;   // Changes when MediaStore rebuilds its database
+    private long lastGeneration = -1;   // Android 11+: generation seen at the last sync
+    private long lastSyncSeconds = 0;   // Pre Android 11: DATE_MODIFIED watermark
+    private boolean snapshotTried = false;
+    private boolean snapshotWriteScheduled = false;
+
+    // --- Change observation ---
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private final Set<Uri> pendingUris = new LinkedHashSet<>(); // Guarded by itself
+    private boolean drainScheduled = false;                      // Guarded by pendingUris
+    private final ContentObserver observer = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onMediaStoreChange(uri);
+        }
+    };
+    private final BroadcastReceiver volumeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            executor.execute(LibraryRepository.this::drainVolumeChanges);
+        }
+    };
+
+    private LibraryRepository(Context context) {
+        appContext = context.getApplicationContext();
+        resolver = appContext.getContentResolver();
+        snapshotFile = new File(appContext.getNoBackupFilesDir(), SNAPSHOT_FILE);
+        volumeScanner = new VolumeScanner(appContext);
+    }
+
+    /**
+     * @return The shared repository, created on first use with the application context.
+     */
+    public static synchronized LibraryRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new LibraryRepository(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Loads the library on a background thread and streams it to the listener on the main thread.
+     * If the library is already in memory it is delivered at once, and resent only if the
+     * background delta sync finds changes.
+     */
+    public void loadAsync(LoadListener listener) {
+        SongStore cached;
+        synchronized (this) {
+            cached = loaded ? store.snapshot() : null;
+        }
+        if (cached != null) {
+            mainHandler.post(() -> listener.onSongsLoaded(cached, 0, false));
+        }
+        executor.execute(() -> {
+            SyncResult result;
+            SongStore songs;
+            synchronized (this) {
+                result = sync(listener);
+                songs = store.snapshot();
+            }
+            if (result == SyncResult.CHANGED) {
+                mainHandler.post(() -> listener.onSongsLoaded(songs, 0, true));
+            } else if (result == SyncResult.UNCHANGED) {
+                mainHandler.post(() -> listener.onSongsLoaded(songs, songs.size(), true));
+            }
+        });
+    }
+
+    /**
+     * Returns the current library sorted by title, syncing any MediaStore changes first.
+     * The returned view is immutable and safe to keep. This blocks on MediaStore, so screens
+     * should prefer {@link #loadAsync(LoadListener)}.
+     */
+    public synchronized SongStore getSongs() {
+        sync(null);
+        return store.snapshot();
+    }
+
+    /**
+     * Brings the in-memory library up to date. Performs a full scan the first time (or when
+     * MediaStore's database was rebuilt) and a delta sync otherwise.
+     */
+    public synchronized void sync() {
+        sync(null);
+    }
+
+    /**
+     * Resolves stored playlist members (file paths or MediaStore ids) to songs on the worker
+     * thread. Members are joined against the in-memory library through its id and path indexes;
+     * only members missing from it (e.g. files not flagged as music) are looked up in MediaStore,
+     * using chunked IN (...) queries.
+     */
+    public void resolveAsync(Collection<String> members, ResolveListener listener) {
+        List<String> keys = new ArrayList<>(members);
+        executor.execute(() -> {
+            SongStore songs;
+            synchronized (this) {
+                sync(null);
+                songs = store.snapshot();
+            }
+            List<String> missing = new ArrayList<>();
+            int[] rows = PlaylistResolver.join(songs, keys, missing);
+            List<Song> resolved = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                resolved.add(songs.getSong(row));
+            }
+            List<String> unresolved = queryMembers(missing, resolved);
+            mainHandler.post(() -> listener.onResolved(resolved, unresolved));
+        });
+    }
+
+    /**
+     * @return The MediaStore content URIs for the given ids, e.g. for a single
+     * createWriteRequest/createDeleteRequest covering the whole selection.
+     */
+    public static List<Uri> contentUris(long[] ids) {
+        List<Uri> uris = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            uris.add(ContentUris.withAppendedId(AUDIO_URI, id));
+        }
+        return uris;
+    }
+
+    /**
+     * Updates title and/or artist of several songs in one ContentProviderOperation batch on the
+     * worker thread, then re-reads only those rows. On Android 11+ the caller must already hold
+     * write access (see MediaStore.createWriteRequest).
+     * @param title  New title, or null to keep each song's title.
+     * @param artist New artist, or null to keep each song's artist.
+     */
+    public void updateMetadataAsync(long[] ids, String title, String artist, EditListener listener) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(ids.length);
+        for (Uri uri : contentUris(ids)) {
+            ContentProviderOperation.Builder update = ContentProviderOperation.newUpdate(uri);
+            if (title != null) update.withValue(MediaStore.Audio.Media.TITLE, title);
+            if (artist != null) update.withValue(MediaStore.Audio.Media.ARTIST, artist);
+            operations.add(update.build());
+        }
+        applyBatchAsync(ids, operations, listener);
+    }
+
+    /**
+     * Deletes several songs in one ContentProviderOperation batch on the worker thread.
+     * Only for Android 10 and below; from Android 11 deletion goes through a single
+     * MediaStore.createDeleteRequest and the observer picks up the removed rows.
+     */
+    public void deleteAsync(long[] ids, EditListener listener) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(ids.length);
+        for (Uri uri : contentUris(ids)) {
+            operations.add(ContentProviderOperation.newDelete(uri).build());
+        }
+        applyBatchAsync(ids, operations, listener);
+    }
+
+    /**
+     * Drops the cached library so the next {@link #sync()} rescans everything.
+     */
+    public synchronized void invalidate() {
+        loaded = false;
+    }
+
+    /**
+     * Registers a listener for incremental changes. The MediaStore observer is only
+     * registered while at least one listener is present. Call from the main thread.
+     */
+    public void addChangeListener(ChangeListener listener) {
+        if (changeListeners.isEmpty()) {
+            resolver.registerContentObserver(AUDIO_URI, true, observer);
+            IntentFilter volumeEvents = new IntentFilter();
+            volumeEvents.addAction(Intent.ACTION_MEDIA_MOUNTED);
+            volumeEvents.addAction(Intent.ACTION_MEDIA_UNMOUNTED);
+            volumeEvents.addAction(Intent.ACTION_MEDIA_EJECT);
+            volumeEvents.addDataScheme("file");
+            ContextCompat.registerReceiver(appContext, volumeReceiver, volumeEvents, ContextCompat.RECEIVER_NOT_EXPORTED);
+        }
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addChangeListener(ChangeListener)}.
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        // Only the removal of the last listener unregisters, once
+        if (changeListeners.remove(listener) && changeListeners.isEmpty()) {
+            resolver.unregisterContentObserver(observer);
+            appContext.unregisterReceiver(volumeReceiver);
+        }
+    }
+
+    // =====================================================================================
+    // BATCHED EDITS
+    // =====================================================================================
+
+    private void applyBatchAsync(long[] ids, ArrayList<ContentProviderOperation> operations, EditListener listener) {
+        executor.execute(() -> {
+            int affected = 0;
+            try {
+                for (ContentProviderResult result : resolver.applyBatch(MediaStore.AUTHORITY, operations)) {
+                    if (result.count != null) affected += result.count;
+                }
+            } catch (RemoteException | OperationApplicationException | SecurityException e) {
+                Log.e(TAG, "Batched edit failed", e);
+            }
+
+            // Patch just the touched rows in; the observer's notifications for them become no-ops
+            synchronized (this) {
+                if (loaded) {
+                    List<LibraryChange> changes = refreshRows(ids);
+                    if (!changes.isEmpty()) scheduleSnapshotWrite();
+                    dispatchChanges(changes);
+                }
+            }
+            int result = affected;
+            if (listener != null) mainHandler.post(() -> listener.onEditApplied(result));
+        });
+    }
+
+    // =====================================================================================
+    // CHANGE OBSERVATION
+    // =====================================================================================
+
+    /**
+     * Collects notified URIs and drains them on the worker thread. MediaStore often sends
+     * bursts of notifications (e.g. during a media scan), so they are coalesced per drain.
+     */
+    private void onMediaStoreChange(Uri uri) {
+        synchronized (pendingUris) {
+            pendingUris.add(uri != null ? uri : AUDIO_URI);
+            if (drainScheduled) return;
+            drainScheduled = true;
+        }
+        executor.execute(this::drainPendingChanges);
+    }
+
+    private void drainPendingChanges() {
+        List<Uri> uris;
+        synchronized (pendingUris) {
+            uris = new ArrayList<>(pendingUris);
+            pendingUris.clear();
+            drainScheduled = false;
+        }
+
+        List<LibraryChange> changes = new ArrayList<>();
+        synchronized (this) {
+            if (!loaded) return; // The next load will pick everything up
+
+            boolean needsDeltaSync = false;
+            long[] ids = new long[uris.size()];
+            int count = 0;
+            for (Uri uri : uris) {
+                long id = parseItemId(uri);
+                if (id < 0) {
+                    needsDeltaSync = true; // Collection-level change, we don't know which rows
+                } else {
+                    ids[count++] = id;
+                }
+            }
+            changes.addAll(refreshRows(Arrays.copyOf(ids, count)));
+            if (needsDeltaSync) {
+                changes.addAll(refreshVolumes());
+                changes.addAll(deltaSync());
+            } else if (!changes.isEmpty()) {
+                scheduleSnapshotWrite();
+            }
+            dispatchChanges(changes);
+        }
+    }
+
+    /**
+     * @return The row id if the URI points at a single MediaStore item, -1 otherwise.
+     */
+    private static long parseItemId(Uri uri) {
+        String last = uri.getLastPathSegment();
+        if (last == null || last.isEmpty()) return -1;
+        for (int i = 0; i < last.length(); i++) {
+            if (!Character.isDigit(last.charAt(i))) return -1;
+        }
+        try {
+            return Long.parseLong(last);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Re-reads the given rows with chunked _ID IN (...) queries and patches them into the store.
+     * Ids that no longer match (deleted, or no longer music) are removed.
+     */
+    private List<LibraryChange> refreshRows(long[] ids) {
+        List<LibraryChange> changes = new ArrayList<>();
+        for (int start = 0; start < ids.length; start += MAX_ARGS_PER_QUERY) {
+            int end = Math.min(ids.length, start + MAX_ARGS_PER_QUERY);
+            String[] args = new String[end - start];
+            StringBuilder selection = new StringBuilder(MUSIC_SELECTION)
+                    .append(" AND ").append(MediaStore.Audio.Media._ID).append(" IN (");
+            for (int i = start; i < end; i++) {
+                args[i - start] = String.valueOf(ids[i]);
+                selection.append(i == start ? "?" : ",?");
+            }
+            selection.append(')');
+
+            Set<Long> found = new HashSet<>();
+            try (Cursor cursor = resolver.query(AUDIO_URI, PROJECTION, selection.toString(), args, null)) {
+                if (cursor != null) {
+                    ColumnIndexes columns = new ColumnIndexes(cursor);
+                    while (cursor.moveToNext()) {
+                        Song fresh = readRow(cursor, columns);
+                        found.add(fresh.getId());
+                        LibraryChange change = upsert(fresh);
+                        if (change != null) changes.add(change);
+                    }
+                }
+            }
+            for (int i = start; i < end; i++) {
+                if (found.contains(ids[i])) continue;
+                LibraryChange change = remove(ids[i]);
+                if (change != null) changes.add(change);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Posts the changes together with the view they produce. Must be called with the lock held.
+     */
+    private void dispatchChanges(List<LibraryChange> changes) {
+        if (changes.isEmpty()) return;
+        SongStore songs = store.snapshot();
+        List<LibraryChange> delivered = Collections.unmodifiableList(changes);
+        mainHandler.post(() -> {
+            for (ChangeListener listener : changeListeners) {
+                listener.onLibraryChanged(songs, delivered);
+            }
+        });
+    }
+
+    // =====================================================================================
+    // SCANNING
+    // =====================================================================================
+
+    private SyncResult sync(LoadListener listener) {
+        if (!loaded && !snapshotTried) {
+            snapshotTried = true;
+            restoreSnapshot(listener);
+        }
+        String version = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? MediaStore.getVersion(appContext) : "";
+        if (!loaded || !version.equals(mediaStoreVersion)) {
+            fullScan(listener);
+            mediaStoreVersion = version;
+            loaded = true;
+            scheduleSnapshotWrite();
+            return SyncResult.STREAMED;
+        }
+        List<LibraryChange> changes = refreshVolumes();
+        changes.addAll(deltaSync());
+        dispatchChanges(changes);
+        return changes.isEmpty() ? SyncResult.UNCHANGED : SyncResult.CHANGED;
+    }
+
+    /**
+     * Reads the whole library in title order. A small first page is queried on its own so it can
+     * be published before MediaStore has produced the rest; the remainder is read with an offset
+     * and handed to the listener every {@link #CHUNK_SIZE} rows. With several volumes the
+     * remainder is read per volume in parallel instead, and published once merged.
+     */
+    private void fullScan(LoadListener listener) {
+        long generation = currentGeneration();
+        long now = System.currentTimeMillis() / 1000;
+        Set<String> volumes = volumeScanner.externalVolumes();
+
+        store.clear();
+        volumeIds.clear();
+        knownVolumes = volumes;
+        ChunkPublisher publisher = new ChunkPublisher(listener);
+
+        int firstPage;
+        try (Cursor cursor = queryRange(0, FIRST_PAGE_SIZE)) {
+            firstPage = readSongs(cursor, publisher, FIRST_PAGE_SIZE);
+        }
+        publisher.flush();
+
+        if (firstPage == FIRST_PAGE_SIZE && volumes.size() > 1) {
+            Map<String, SongStore> parts = volumeScanner.scanAll(volumes);
+            store.clear();
+            store.appendMerged(new ArrayList<>(parts.values()));
+            for (Map.Entry<String, SongStore> part : parts.entrySet()) {
+                volumeIds.put(part.getKey(), sortedIds(part.getValue()));
+            }
+            // Volumes that failed count as unknown, so the next sync retries them
+            knownVolumes = new HashSet<>(parts.keySet());
+            lastGeneration = generation;
+            lastSyncSeconds = now;
+            publish(listener, store.snapshot(), 0, true);
+            return;
+        }
+
+        boolean duplicates = false;
+        if (firstPage == FIRST_PAGE_SIZE) {
+            try (Cursor cursor = queryRange(FIRST_PAGE_SIZE, Integer.MAX_VALUE)) {
+                duplicates = readSongs(cursor, publisher, CHUNK_SIZE) < 0;
+            }
+        }
+
+        lastGeneration = generation;
+        lastSyncSeconds = now;
+
+        if (!duplicates && store.isSorted()) {
+            publisher.finish();
+        } else {
+            // Rows shifted between the two queries, or MediaStore collates titles differently
+            store.sort();
+            publish(listener, store.snapshot(), 0, true);
+        }
+    }
+
+    /**
+     * Pulls only rows inserted, updated or deleted since the previous sync.
+     * @return The changes that were applied.
+     */
+    private List<LibraryChange> deltaSync() {
+        List<LibraryChange> changes = new ArrayList<>();
+        long generation = currentGeneration();
+        long now = System.currentTimeMillis() / 1000;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && generation == lastGeneration) {
+            return changes; // Nothing changed since the last sync
+        }
+
+        // Inserted and updated rows
+        String selection;
+        String[] args;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            selection = MUSIC_SELECTION + " AND " + MediaStore.Audio.Media.GENERATION_MODIFIED + ">?";
+            args = new String[]{String.valueOf(lastGeneration)};
+        } else {
+            selection = MUSIC_SELECTION + " AND " + MediaStore.Audio.Media.DATE_MODIFIED + ">=?";
+            args = new String[]{String.valueOf(lastSyncSeconds)};
+        }
+        try (Cursor cursor = resolver.query(AUDIO_URI, PROJECTION, selection, args, null)) {
+            if (cursor != null) {
+                ColumnIndexes columns = new ColumnIndexes(cursor);
+                while (cursor.moveToNext()) {
+                    LibraryChange change = upsert(readRow(cursor, columns));
+                    if (change != null) changes.add(change);
+                }
+            }
+        }
+
+        changes.addAll(removeMissingRows());
+
+        lastGeneration = generation;
+        lastSyncSeconds = now;
+        if (!changes.isEmpty()) {
+            scheduleSnapshotWrite();
+        }
+        return changes;
+    }
+
+    /**
+     * Removes rows that are no longer in MediaStore. MediaStore keeps no tombstones, so this
+     * diffs the id column only.
+     */
+    private List<LibraryChange> removeMissingRows() {
+        long[] presentIds;
+        try (Cursor cursor = resolver.query(AUDIO_URI, new String[]{MediaStore.Audio.Media._ID},
+                MUSIC_SELECTION, null, null)) {
+            presentIds = new long[cursor != null ? cursor.getCount() : 0];
+            int n = 0;
+            while (cursor != null && cursor.moveToNext() && n < presentIds.length) {
+                presentIds[n++] = cursor.getLong(0);
+            }
+            Arrays.sort(presentIds, 0, n);
+            if (n < presentIds.length) presentIds = Arrays.copyOf(presentIds, n);
+        }
+        List<Long> removedIds = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) {
+            long id = store.getId(row);
+            if (Arrays.binarySearch(presentIds, id) < 0) removedIds.add(id);
+        }
+        List<LibraryChange> changes = new ArrayList<>(removedIds.size());
+        for (long id : removedIds) {
+            changes.add(remove(id));
+        }
+        return changes;
+    }
+
+    // =====================================================================================
+    // STORAGE VOLUMES
+    // =====================================================================================
+
+    /**
+     * Runs on the worker thread after a mount, unmount or eject broadcast.
+     */
+    private void drainVolumeChanges() {
+        synchronized (this) {
+            if (!loaded) return;
+            dispatchChanges(refreshVolumes());
+        }
+    }
+
+    /**
+     * Brings the store in line with the set of mounted volumes. Rows of a volume that went away
+     * are dropped; a volume that appeared (or came back) is scanned on its own and merged in.
+     * MediaStore hides the rows of an unmounted volume without bumping its generation, so the
+     * delta sync alone would not notice either case.
+     */
+    private List<LibraryChange> refreshVolumes() {
+        List<LibraryChange> changes = new ArrayList<>();
+        Set<String> current = volumeScanner.externalVolumes();
+        if (knownVolumes == null) {
+            knownVolumes = current; // Restored from the snapshot: take the current set as baseline
+            return changes;
+        }
+        if (current.equals(knownVolumes)) return changes;
+
+        List<String> removed = VolumeScanner.difference(knownVolumes, current);
+        for (String volume : removed) {
+            long[] ids = volumeIds.remove(volume);
+            if (ids == null) continue;
+            for (long id : ids) {
+                LibraryChange change = remove(id);
+                if (change != null) changes.add(change);
+            }
+        }
+        if (!removed.isEmpty()) {
+            // volumeIds only holds what the volume scans found; tracks that reached the volume
+            // later through the delta sync or the observer are only caught by the id diff
+            changes.addAll(removeMissingRows());
+        }
+
+        List<String> added = VolumeScanner.difference(current, knownVolumes);
+        Set<String> scanned = new HashSet<>(current);
+        for (Map.Entry<String, SongStore> entry : volumeScanner.scanAll(added).entrySet()) {
+            SongStore part = entry.getValue();
+            volumeIds.put(entry.getKey(), sortedIds(part));
+            for (int row = 0; row < part.size(); row++) {
+                LibraryChange change = upsert(part.getSong(row));
+                if (change != null) changes.add(change);
+            }
+        }
+        for (String volume : added) {
+            if (!volumeIds.containsKey(volume)) scanned.remove(volume); // Retry on the next sync
+        }
+        knownVolumes = scanned;
+
+        if (!changes.isEmpty()) scheduleSnapshotWrite();
+        return changes;
+    }
+
+    private static long[] sortedIds(SongStore part) {
+        long[] ids = new long[part.size()];
+        for (int row = 0; row < ids.length; row++) {
+            ids[row] = part.getId(row);
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Looks members up directly in MediaStore, in chunks of {@link #MAX_ARGS_PER_QUERY}.
+     * @param out Receives the songs found.
+     * @return The members that were not found.
+     */
+    private List<String> queryMembers(List<String> members, List<Song> out) {
+        List<String> ids = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (String member : members) {
+            (PlaylistResolver.isId(member) ? ids : paths).add(member);
+        }
+        Set<String> found = new HashSet<>();
+        queryIn(MediaStore.Audio.Media._ID, ids, out, found, true);
+        queryIn(MediaStore.Audio.Media.DATA, paths, out, found, false);
+
+        List<String> unresolved = new ArrayList<>();
+        for (String member : members) {
+            if (!found.contains(member)) unresolved.add(member);
+        }
+        return unresolved;
+    }
+
+    private void queryIn(String column, List<String> values, List<Song> out, Set<String> found, boolean byId) {
+        for (int start = 0; start < values.size(); start += MAX_ARGS_PER_QUERY) {
+            List<String> chunk = values.subList(start, Math.min(values.size(), start + MAX_ARGS_PER_QUERY));
+            StringBuilder selection = new StringBuilder(column).append(" IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                selection.append(i == 0 ? "?" : ",?");
+            }
+            selection.append(')');
+            try (Cursor cursor = resolver.query(AUDIO_URI, PROJECTION, selection.toString(),
+                    chunk.toArray(new String[0]), null)) {
+                if (cursor == null) continue;
+                ColumnIndexes columns = new ColumnIndexes(cursor);
+                while (cursor.moveToNext()) {
+                    Song song = readRow(cursor, columns);
+                    out.add(song);
+                    found.add(byId ? String.valueOf(song.getId()) : song.getPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Queries a title-ordered window of the library.
+     */
+    private Cursor queryRange(int offset, int limit) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            Bundle args = new Bundle();
+            args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, MUSIC_SELECTION);
+            args.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, SORT_ORDER);
+            args.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+            args.putInt(ContentResolver.QUERY_ARG_OFFSET, offset);
+            return resolver.query(AUDIO_URI, PROJECTION, args, null);
+        }
+        // Older MediaStore versions accept a LIMIT clause appended to the sort order
+        return resolver.query(AUDIO_URI, PROJECTION, MUSIC_SELECTION, null,
+                SORT_ORDER + " LIMIT " + limit + " OFFSET " + offset);
+    }
+
+    /**
+     * Appends every row of the cursor to the store, publishing every {@code chunkSize} rows.
+     * @return The number of rows read, or -1 if some ids had already been read.
+     */
+    private int readSongs(Cursor cursor, ChunkPublisher publisher, int chunkSize) {
+        if (cursor == null) return 0;
+        ColumnIndexes c = new ColumnIndexes(cursor);
+        int count = 0;
+        boolean duplicates = false;
+        while (cursor.moveToNext()) {
+            boolean added = store.append(cursor.getLong(c.id), cursor.getString(c.title),
+                    cursor.getString(c.artist), cursor.getString(c.data),
+                    cursor.getLong(c.albumId), cursor.getLong(c.duration));
+            duplicates |= !added;
+            count++;
+            publisher.rowAdded(chunkSize);
+        }
+        return duplicates ? -1 : count;
+    }
+
+    private static Song readRow(Cursor cursor, ColumnIndexes c) {
+        return new Song(cursor.getLong(c.id), cursor.getString(c.title),
+                cursor.getString(c.artist), cursor.getString(c.data),
+                cursor.getLong(c.albumId), cursor.getLong(c.duration));
+    }
+
+    /**
+     * Column positions of {@link #PROJECTION}, resolved once per cursor.
+     */
+    static final class ColumnIndexes {
+        final int id, title, artist, data, albumId, duration;
+
+        ColumnIndexes(Cursor cursor) {
+            id = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+            title = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
+            artist = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
+            data = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
+            albumId = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
+            duration = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
+        }
+    }
+
+    /**
+     * Publishes views of the growing store to a LoadListener as rows are appended.
+     * The first view of a load always redraws from row 0.
+     */
+    private final class ChunkPublisher {
+        private final LoadListener listener;
+        private int published = 0;
+        private boolean first = true;
+
+        ChunkPublisher(LoadListener listener) {
+            this.listener = listener;
+        }
+
+        void rowAdded(int chunkSize) {
+            if (store.size() - published >= chunkSize) flush();
+        }
+
+        void flush() {
+            if (listener == null || (!first && store.size() == published)) return;
+            publish(listener, store.snapshot(), first ? 0 : published, false);
+            published = store.size();
+            first = false;
+        }
+
+        void finish() {
+            flush();
+            publish(listener, store.snapshot(), store.size(), true);
+        }
+    }
+
+    // =====================================================================================
+    // SNAPSHOT PERSISTENCE
+    // =====================================================================================
+
+    /**
+     * Loads the library from the snapshot file, if one exists, and streams it to the listener.
+     * The sync watermarks are restored too, so the following delta sync only fixes drift.
+     */
+    private void restoreSnapshot(LoadListener listener) {
+        LibrarySnapshot snap = LibrarySnapshot.read(snapshotFile);
+        if (snap == null) return;
+
+        store.clear();
+        ChunkPublisher publisher = new ChunkPublisher(listener);
+        for (int row = 0; row < snap.getRowCount(); row++) {
+            store.append(snap.getId(row), snap.getTitle(row), snap.getArtist(row), snap.getPath(row),
+                    snap.getAlbumId(row), snap.getDuration(row), snap.getSearchKey(row));
+            publisher.rowAdded(row < FIRST_PAGE_SIZE ? FIRST_PAGE_SIZE : CHUNK_SIZE);
+        }
+        publisher.flush();
+        if (!store.isSorted()) {
+            store.sort();
+            publish(listener, store.snapshot(), 0, false);
+        }
+
+        mediaStoreVersion = snap.getMediaStoreVersion();
+        lastGeneration = snap.getGeneration();
+        lastSyncSeconds = snap.getSyncSeconds();
+        loaded = true;
+    }
+
+    /**
+     * Writes the snapshot on the worker thread. Several changes in a row produce one write.
+     */
+    private void scheduleSnapshotWrite() {
+        if (snapshotWriteScheduled) return;
+        snapshotWriteScheduled = true;
+        executor.execute(() -> {
+            SongStore songs;
+            String version;
+            long generation;
+            long syncSeconds;
+            synchronized (this) {
+                snapshotWriteScheduled = false;
+                songs = store.snapshot();
+                version = mediaStoreVersion;
+                generation = lastGeneration;
+                syncSeconds = lastSyncSeconds;
+            }
+            try {
+                LibrarySnapshot.write(snapshotFile, songs, version, generation, syncSeconds);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write library snapshot", e);
+            }
+        });
+    }
+
+    // =====================================================================================
+    // IN-MEMORY INDEX MAINTENANCE
+    // =====================================================================================
+
+    /**
+     * Inserts or replaces a song, keeping the store sorted with a binary search.
+     * @return The change, or null if the stored row was identical.
+     */
+    private LibraryChange upsert(Song song) {
+        int oldRow = store.rowOf(song.getId());
+        Song old = null;
+        if (oldRow != LongIntMap.MISSING) {
+            old = store.getSong(oldRow);
+            if (sameContent(old, song)) return null;
+            store.removeRow(oldRow);
+        }
+        int newRow = store.insertSorted(song);
+        if (old == null) {
+            return new LibraryChange(LibraryChange.Type.INSERT, null, song, -1, newRow);
+        }
+        return new LibraryChange(LibraryChange.Type.UPDATE, old, song, oldRow, newRow);
+    }
+
+    /**
+     * @return The change, or null if the id was not in the library.
+     */
+    private LibraryChange remove(long id) {
+        int row = store.rowOf(id);
+        if (row == LongIntMap.MISSING) return null;
+        Song old = store.getSong(row);
+        store.removeRow(row);
+        return new LibraryChange(LibraryChange.Type.REMOVE, old, null, row, -1);
+    }
+
+    private static boolean sameContent(Song a, Song b) {
+        return Objects.equals(a.getTitle(), b.getTitle())
+                && Objects.equals(a.getArtist(), b.getArtist())
+                && Objects.equals(a.getPath(), b.getPath())
+                && a.getAlbumId() == b.getAlbumId()
+                && a.getDuration() == b.getDuration();
+    }
+
+    private void publish(LoadListener listener, SongStore songs, int firstNewRow, boolean complete) {
+        if (listener != null) {
+            mainHandler.post(() -> listener.onSongsLoaded(songs, firstNewRow, complete));
+        }
+    }
+
+    private long currentGeneration() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return MediaStore.getGeneration(appContext, MediaStore.VOLUME_EXTERNAL);
+        }
+        return -1;
+    }
+}
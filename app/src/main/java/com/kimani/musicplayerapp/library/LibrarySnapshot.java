@@ -0,0 +1,203 @@
+package com.kimani.musicplayerapp.library;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LibrarySnapshot persists the library to a compact binary file so a cold start can show the
+ * list before MediaStore has been queried.
+ *
+ * Layout (big endian):
+ * <pre>
+ *   header   magic, format version, row count, string count,
+ *            sync generation, sync seconds, MediaStore version (string ref)
+ *   columns  long id[rows], long albumId[rows], long duration[rows],
+ *            int titleRef[rows], int artistRef[rows], int pathRef[rows], int searchKeyRef[rows]
+ *   pool     int offset[strings + 1], UTF-8 bytes
+ * </pre>
+ * Every string is stored once in the pool and referenced by index (-1 for null), so repeated
+ * artist names cost four bytes per row. Search keys ({@link TextNormalizer}) are stored too, so a
+ * cold start does not normalize every title again. The file is memory-mapped when read.
+ */
+public class LibrarySnapshot {
+
+    private static final int MAGIC = 0x4C494252; // "LIBR"
+    private static final int FORMAT_VERSION = 2; // 2: search keys
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 8 + 4;
+
+    private final ByteBuffer buffer;
+    private final int rowCount;
+    private final int stringCount;
+    private final long generation;
+    private final long syncSeconds;
+    private final String mediaStoreVersion;
+    private final String[] decoded; // Pool strings decoded so far, shared by every row using them
+
+    // Absolute offsets of each section inside the buffer
+    private final int idsOffset, albumIdsOffset, durationsOffset;
+    private final int titleRefsOffset, artistRefsOffset, pathRefsOffset, searchKeyRefsOffset;
+    private final int poolIndexOffset, poolDataOffset;
+
+    private LibrarySnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a library snapshot");
+        }
+        rowCount = buffer.getInt(8);
+        stringCount = buffer.getInt(12);
+        generation = buffer.getLong(16);
+        syncSeconds = buffer.getLong(24);
+        int versionRef = buffer.getInt(32);
+        if (rowCount < 0 || stringCount < 0) {
+            throw new IOException("Corrupt snapshot header");
+        }
+
+        idsOffset = HEADER_SIZE;
+        albumIdsOffset = idsOffset + 8 * rowCount;
+        durationsOffset = albumIdsOffset + 8 * rowCount;
+        titleRefsOffset = durationsOffset + 8 * rowCount;
+        artistRefsOffset = titleRefsOffset + 4 * rowCount;
+        pathRefsOffset = artistRefsOffset + 4 * rowCount;
+        searchKeyRefsOffset = pathRefsOffset + 4 * rowCount;
+        poolIndexOffset = searchKeyRefsOffset + 4 * rowCount;
+        poolDataOffset = poolIndexOffset + 4 * (stringCount + 1);
+        if (poolDataOffset > buffer.capacity()
+                || poolDataOffset + buffer.getInt(poolIndexOffset + 4 * stringCount) != buffer.capacity()) {
+            throw new IOException("Truncated snapshot");
+        }
+        decoded = new String[stringCount];
+        mediaStoreVersion = getString(versionRef);
+    }
+
+    /**
+     * Memory-maps a snapshot file.
+     * @return The snapshot, or null if the file is missing or unreadable.
+     */
+    public static LibrarySnapshot read(File file) {
+        if (!file.isFile()) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new LibrarySnapshot(mapped);
+        } catch (IOException | IndexOutOfBoundsException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the songs to a temporary file and atomically renames it over {@code file}.
+     */
+    public static void write(File file, SongStore songs, String mediaStoreVersion,
+                             long generation, long syncSeconds) throws IOException {
+        int rows = songs.size();
+        Map<String, Integer> refs = new HashMap<>();
+        List<String> pool = new ArrayList<>();
+        int versionRef = intern(mediaStoreVersion, refs, pool);
+        int[] titleRefs = new int[rows];
+        int[] artistRefs = new int[rows];
+        int[] pathRefs = new int[rows];
+        int[] searchKeyRefs = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            titleRefs[i] = intern(songs.getTitle(i), refs, pool);
+            artistRefs[i] = intern(songs.getArtist(i), refs, pool);
+            pathRefs[i] = intern(songs.getPath(i), refs, pool);
+            searchKeyRefs[i] = intern(songs.getSearchKey(i), refs, pool);
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(rows);
+            out.writeInt(pool.size());
+            out.writeLong(generation);
+            out.writeLong(syncSeconds);
+            out.writeInt(versionRef);
+
+            for (int i = 0; i < rows; i++) out.writeLong(songs.getId(i));
+            for (int i = 0; i < rows; i++) out.writeLong(songs.getAlbumId(i));
+            for (int i = 0; i < rows; i++) out.writeLong(songs.getDuration(i));
+            for (int ref : titleRefs) out.writeInt(ref);
+            for (int ref : artistRefs) out.writeInt(ref);
+            for (int ref : pathRefs) out.writeInt(ref);
+            for (int ref : searchKeyRefs) out.writeInt(ref);
+
+            List<byte[]> encoded = new ArrayList<>(pool.size());
+            int offset = 0;
+            out.writeInt(0);
+            for (String s : pool) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                offset += bytes.length;
+                out.writeInt(offset);
+            }
+            for (byte[] bytes : encoded) out.write(bytes);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static int intern(String value, Map<String, Integer> refs, List<String> pool) {
+        if (value == null) return -1;
+        Integer ref = refs.get(value);
+        if (ref == null) {
+            ref = pool.size();
+            refs.put(value, ref);
+            pool.add(value);
+        }
+        return ref;
+    }
+
+    // --- Accessors (rows are in the order they were written) ---
+
+    public int getRowCount() { return rowCount; }
+
+    public long getGeneration() { return generation; }
+
+    public long getSyncSeconds() { return syncSeconds; }
+
+    public String getMediaStoreVersion() { return mediaStoreVersion; }
+
+    public long getId(int row) { return buffer.getLong(idsOffset + 8 * row); }
+
+    public long getAlbumId(int row) { return buffer.getLong(albumIdsOffset + 8 * row); }
+
+    public long getDuration(int row) { return buffer.getLong(durationsOffset + 8 * row); }
+
+    public String getTitle(int row) { return getString(buffer.getInt(titleRefsOffset + 4 * row)); }
+
+    public String getArtist(int row) { return getString(buffer.getInt(artistRefsOffset + 4 * row)); }
+
+    public String getPath(int row) { return getString(buffer.getInt(pathRefsOffset + 4 * row)); }
+
+    public String getSearchKey(int row) { return getString(buffer.getInt(searchKeyRefsOffset + 4 * row)); }
+
+    private String getString(int ref) {
+        if (ref < 0) return null;
+        if (decoded[ref] != null) return decoded[ref];
+        int start = buffer.getInt(poolIndexOffset + 4 * ref);
+        int end = buffer.getInt(poolIndexOffset + 4 * (ref + 1));
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(poolDataOffset + start);
+        view.get(bytes);
+        decoded[ref] = new String(bytes, StandardCharsets.UTF_8);
+        return decoded[ref];
+    }
+}
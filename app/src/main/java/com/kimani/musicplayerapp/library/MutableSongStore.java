@@ -0,0 +1,283 @@
+package com.kimani.musicplayerapp.library;
+
+import com.kimani.musicplayerapp.Song;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MutableSongStore owns the column arrays behind {@link SongStore} views and keeps an id to row
+ * index up to date. Appends write past the end of every published view, so views keep sharing the
+ * arrays; inserts and removals in the middle copy the arrays first if a view has seen them.
+ */
+class MutableSongStore {
+
+    private long[] ids;
+    private long[] albumIds;
+    private long[] durations;
+    private String[] titles;
+    private String[] paths;
+    private int[] artistRefs;
+    private String[] searchKeys;
+    private int size;
+
+    private String[] artistTable;
+    private int artistCount;
+    private final Map<String, Integer> artistIndex = new HashMap<>();
+
+    private final LongIntMap rowsById = new LongIntMap();
+    private boolean shared = false;  // True once a view has been handed out for the current arrays
+    private SongStore view;          // Cached view of the current state
+
+    MutableSongStore() {
+        allocate(64);
+        artistTable = new String[16];
+    }
+
+    int size() { return size; }
+
+    long getId(int row) { return ids[row]; }
+
+    String getTitle(int row) { return titles[row]; }
+
+    /**
+     * @return The row holding this MediaStore id, or {@link LongIntMap#MISSING}.
+     */
+    int rowOf(long id) { return rowsById.get(id); }
+
+    Song getSong(int row) {
+        int ref = artistRefs[row];
+        return new Song(ids[row], titles[row], ref < 0 ? null : artistTable[ref], paths[row],
+                albumIds[row], durations[row]);
+    }
+
+    /**
+     * @return An immutable view of the current rows.
+     */
+    SongStore snapshot() {
+        if (view == null) {
+            view = new SongStore(ids, albumIds, durations, titles, paths, artistRefs, artistTable,
+                    searchKeys, size);
+            shared = true;
+        }
+        return view;
+    }
+
+    void clear() {
+        allocate(64);
+        size = 0;
+        artistTable = new String[16];
+        artistCount = 0;
+        artistIndex.clear();
+        rowsById.clear();
+        shared = false;
+        view = null;
+    }
+
+    /**
+     * Appends a row unless its id is already present.
+     * @return False if the id was already stored.
+     */
+    boolean append(long id, String title, String artist, String path, long albumId, long duration) {
+        return append(id, title, artist, path, albumId, duration, null);
+    }
+
+    /**
+     * Appends a row unless its id is already present.
+     * @param searchKey The row's search key if already known (e.g. read from a snapshot), or null
+     *                  to compute it.
+     * @return False if the id was already stored.
+     */
+    boolean append(long id, String title, String artist, String path, long albumId, long duration,
+                   String searchKey) {
+        if (rowsById.containsKey(id)) return false;
+        ensureCapacity(size + 1);
+        write(size, id, title, artist, path, albumId, duration, searchKey);
+        rowsById.put(id, size);
+        size++;
+        view = null;
+        return true;
+    }
+
+    /**
+     * Appends the rows of several title-ordered views in one k-way merge, so the result stays in
+     * {@link SongOrder#BY_TITLE} order without re-sorting. Used to combine per-volume scans.
+     */
+    void appendMerged(List<SongStore> parts) {
+        int total = 0;
+        for (SongStore part : parts) total += part.size();
+        ensureCapacity(size + total);
+
+        int[] heads = new int[parts.size()];
+        while (true) {
+            int best = -1;
+            for (int p = 0; p < heads.length; p++) {
+                SongStore part = parts.get(p);
+                if (heads[p] == part.size()) continue;
+                if (best < 0 || SongOrder.compare(part.getTitle(heads[p]), part.getId(heads[p]),
+                        parts.get(best).getTitle(heads[best]), parts.get(best).getId(heads[best])) < 0) {
+                    best = p;
+                }
+            }
+            if (best < 0) return;
+            SongStore part = parts.get(best);
+            int row = heads[best]++;
+            append(part.getId(row), part.getTitle(row), part.getArtist(row), part.getPath(row),
+                    part.getAlbumId(row), part.getDuration(row), part.getSearchKey(row));
+        }
+    }
+
+    /**
+     * Inserts the song at its sorted position.
+     * @return The row it was inserted at.
+     */
+    int insertSorted(Song song) {
+        int row = insertionPoint(song.getTitle(), song.getId());
+        ensureCapacity(size + 1);
+        unshare();
+        shift(row, row + 1, size - row);
+        write(row, song.getId(), song.getTitle(), song.getArtist(), song.getPath(),
+                song.getAlbumId(), song.getDuration(), null);
+        size++;
+        reindexFrom(row);
+        view = null;
+        return row;
+    }
+
+    void removeRow(int row) {
+        unshare();
+        rowsById.remove(ids[row]);
+        shift(row + 1, row, size - row - 1);
+        size--;
+        titles[size] = null;
+        paths[size] = null;
+        searchKeys[size] = null;
+        reindexFrom(row);
+        view = null;
+    }
+
+    /**
+     * Binary search for the row a (title, id) pair belongs at in {@link SongOrder#BY_TITLE} order.
+     */
+    int insertionPoint(String title, long id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (SongOrder.compare(titles[mid], ids[mid], title, id) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    boolean isSorted() {
+        for (int i = 1; i < size; i++) {
+            if (SongOrder.compare(titles[i - 1], ids[i - 1], titles[i], ids[i]) > 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Re-sorts every row. Only needed when MediaStore returned rows in an unexpected order.
+     */
+    void sort() {
+        List<Song> songs = new ArrayList<>(size);
+        Map<Long, String> keys = new HashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            songs.add(getSong(i));
+            keys.put(ids[i], searchKeys[i]);
+        }
+        Collections.sort(songs, SongOrder.BY_TITLE);
+        clear();
+        for (Song s : songs) {
+            append(s.getId(), s.getTitle(), s.getArtist(), s.getPath(), s.getAlbumId(), s.getDuration(),
+                    keys.get(s.getId()));
+        }
+    }
+
+    private void write(int row, long id, String title, String artist, String path, long albumId,
+                       long duration, String searchKey) {
+        ids[row] = id;
+        titles[row] = title;
+        paths[row] = path;
+        albumIds[row] = albumId;
+        durations[row] = duration;
+        artistRefs[row] = internArtist(artist);
+        searchKeys[row] = searchKey != null ? searchKey : TextNormalizer.searchKey(title, artist);
+    }
+
+    private int internArtist(String artist) {
+        if (artist == null) return -1;
+        Integer ref = artistIndex.get(artist);
+        if (ref == null) {
+            if (artistCount == artistTable.length) {
+                // Views keep the old table; refs they hold are all below their copy's length
+                artistTable = Arrays.copyOf(artistTable, artistCount * 2);
+            }
+            ref = artistCount++;
+            artistTable[ref] = artist;
+            artistIndex.put(artist, ref);
+        }
+        return ref;
+    }
+
+    private void reindexFrom(int row) {
+        for (int i = row; i < size; i++) {
+            rowsById.put(ids[i], i);
+        }
+    }
+
+    private void shift(int from, int to, int count) {
+        if (count <= 0) return;
+        System.arraycopy(ids, from, ids, to, count);
+        System.arraycopy(albumIds, from, albumIds, to, count);
+        System.arraycopy(durations, from, durations, to, count);
+        System.arraycopy(titles, from, titles, to, count);
+        System.arraycopy(paths, from, paths, to, count);
+        System.arraycopy(artistRefs, from, artistRefs, to, count);
+        System.arraycopy(searchKeys, from, searchKeys, to, count);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= ids.length) return;
+        int capacity = Math.max(needed, ids.length + (ids.length >> 1));
+        resize(capacity);
+    }
+
+    /**
+     * Gives this store private copies of the arrays if a view may still be reading them.
+     */
+    private void unshare() {
+        if (shared) {
+            resize(ids.length);
+        }
+    }
+
+    private void resize(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        albumIds = Arrays.copyOf(albumIds, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        paths = Arrays.copyOf(paths, capacity);
+        artistRefs = Arrays.copyOf(artistRefs, capacity);
+        searchKeys = Arrays.copyOf(searchKeys, capacity);
+        shared = false;
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        albumIds = new long[capacity];
+        durations = new long[capacity];
+        titles = new String[capacity];
+        paths = new String[capacity];
+        artistRefs = new int[capacity];
+        searchKeys = new String[capacity];
+    }
+}
@@ -0,0 +1,62 @@
+package com.kimani.musicplayerapp.library;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * PathMatcher finds library rows for file paths written on another device, e.g. in an imported
+ * M3U playlist. An exact path is one hash lookup through {@link SongStore#rowOfPath}; a path
+ * that differs only in its storage root ("/sdcard/Music/..." vs "/storage/emulated/0/Music/...",
+ * an SD card id, a PC drive) falls back to the last two path segments, the folder and file
+ * name, compared case-insensitively. That index is built on the first miss and only used when
+ * it names exactly one track.
+ */
+public final class PathMatcher {
+
+    private static final int AMBIGUOUS = -2;
+
+    private final SongStore songs;
+    private Map<String, Integer> rowsByTail; // Built on the first miss
+
+    public PathMatcher(SongStore songs) {
+        this.songs = songs;
+    }
+
+    /**
+     * @return The row of the track at this path, or -1 if the library has no single match.
+     */
+    public int rowOf(String path) {
+        int row = songs.rowOfPath(path);
+        if (row >= 0) return row;
+        String tail = tailOf(path);
+        if (tail == null) return -1;
+        if (rowsByTail == null) rowsByTail = buildTailIndex();
+        Integer match = rowsByTail.get(tail);
+        return match == null || match == AMBIGUOUS ? -1 : match;
+    }
+
+    private Map<String, Integer> buildTailIndex() {
+        Map<String, Integer> index = new HashMap<>(songs.size() * 2);
+        for (int row = 0; row < songs.size(); row++) {
+            String tail = tailOf(songs.getPath(row));
+            if (tail == null) continue;
+            Integer previous = index.put(tail, row);
+            if (previous != null) index.put(tail, AMBIGUOUS);
+        }
+        return index;
+    }
+
+    /**
+     * @return "folder/file" in lower case, with either kind of separator; null for a path
+     * without a file name.
+     */
+    static String tailOf(String path) {
+        if (path == null) return null;
+        String p = path.replace('\\', '/');
+        int slash = p.lastIndexOf('/');
+        if (slash == p.length() - 1) return null;
+        int previous = slash > 0 ? p.lastIndexOf('/', slash - 1) : slash;
+        return p.substring(previous + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,53 @@
+package com.kimani.musicplayerapp.library;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * PlaylistResolver joins stored playlist members against the in-memory library.
+ * A member is either a file path (playlists built in the song picker) or a numeric
+ * MediaStore id (the Favorites list). Each member costs one hash lookup, instead of one
+ * OR term in a MediaStore selection.
+ */
+public final class PlaylistResolver {
+
+    private PlaylistResolver() {}
+
+    /**
+     * @param songs      The library to resolve against.
+     * @param members    Stored playlist members (paths or ids).
+     * @param unresolved Receives members not found in the library.
+     * @return The rows of the resolved members, in library (title) order, without duplicates.
+     */
+    static int[] join(SongStore songs, Collection<String> members, List<String> unresolved) {
+        int[] rows = new int[members.size()];
+        int count = 0;
+        for (String member : members) {
+            if (member == null) continue;
+            int row = isId(member) ? songs.rowOfId(Long.parseLong(member)) : songs.rowOfPath(member);
+            if (row >= 0) {
+                rows[count++] = row;
+            } else {
+                unresolved.add(member);
+            }
+        }
+        Arrays.sort(rows, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || rows[unique - 1] != rows[i]) rows[unique++] = rows[i];
+        }
+        return Arrays.copyOf(rows, unique);
+    }
+
+    /**
+     * @return True if the member is a MediaStore id rather than a path.
+     */
+    public static boolean isId(String member) {
+        if (member.isEmpty() || member.length() > 18) return false;
+        for (int i = 0; i < member.length(); i++) {
+            if (!Character.isDigit(member.charAt(i))) return false;
+        }
+        return true;
+    }
+}
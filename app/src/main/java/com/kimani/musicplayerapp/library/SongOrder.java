@@ -0,0 +1,25 @@
+package com.kimani.musicplayerapp.library;
+
+import com.kimani.musicplayerapp.Song;
+
+import java.util.Comparator;
+
+/**
+ * SongOrder defines the order the library is displayed in: by title, then by MediaStore id
+ * so every song has a unique position and can be found again with a binary search.
+ */
+public final class SongOrder {
+
+    public static final Comparator<Song> BY_TITLE =
+            (a, b) -> compare(a.getTitle(), a.getId(), b.getTitle(), b.getId());
+
+    private SongOrder() {}
+
+    /**
+     * Compares two (title, id) pairs. Null titles sort first.
+     */
+    public static int compare(String title1, long id1, String title2, long id2) {
+        int result = (title1 == null ? "" : title1).compareTo(title2 == null ? "" : title2);
+        return result != 0 ? result : Long.compare(id1, id2);
+    }
+}
@@ -0,0 +1,135 @@
+package com.kimani.musicplayerapp.library;
+
+import com.kimani.musicplayerapp.Song;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SongStore is an immutable, column-oriented view of the library (struct of arrays).
+ * Instead of one Song object per track it keeps primitive id/album/duration columns, title and
+ * path columns, and an int column referencing a deduplicated artist table. Adapters bind rows by
+ * index, so no per-row model objects are created while scrolling. A search key column holds each
+ * track's {@link TextNormalizer#searchKey(String, String)}, computed once when the row is stored.
+ *
+ * Rough heap cost per track on ART (40k tracks, ~20 char titles, ~60 char paths):
+ * <pre>
+ *   List&lt;Song&gt; + List&lt;TrackInfo&gt; + id map  ~330 bytes (Song 56, TrackInfo 32, id String 32,
+ *                                         HashMap entry + boxed Long 48, one String per artist
+ *                                         per row ~32, plus title/path Strings)
+ *   SongStore                              ~160 bytes (36 bytes of columns, title/path Strings,
+ *                                         artists shared through the table)
+ * </pre>
+ * Views are produced by {@link MutableSongStore#snapshot()} and may share arrays with it; the
+ * owner copies the arrays before changing any row a view can see.
+ */
+public class SongStore {
+
+    public static final SongStore EMPTY = new SongStore(new long[0], new long[0], new long[0],
+            new String[0], new String[0], new int[0], new String[0], new String[0], 0);
+
+    final long[] ids;
+    final long[] albumIds;
+    final long[] durations;
+    final String[] titles;
+    final String[] paths;
+    final int[] artistRefs;       // Index into artistTable, -1 for null
+    final String[] artistTable;
+    final String[] searchKeys;    // Normalized "title\nartist"
+    private final int size;
+
+    // Lookup indexes, built on first use and then reused for the lifetime of this view
+    private volatile LongIntMap idIndex;
+    private volatile Map<String, Integer> pathIndex;
+
+    SongStore(long[] ids, long[] albumIds, long[] durations, String[] titles, String[] paths,
+              int[] artistRefs, String[] artistTable, String[] searchKeys, int size) {
+        this.ids = ids;
+        this.albumIds = albumIds;
+        this.durations = durations;
+        this.titles = titles;
+        this.paths = paths;
+        this.artistRefs = artistRefs;
+        this.artistTable = artistTable;
+        this.searchKeys = searchKeys;
+        this.size = size;
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public long getId(int row) { return ids[check(row)]; }
+
+    public String getTitle(int row) { return titles[check(row)]; }
+
+    public String getArtist(int row) {
+        int ref = artistRefs[check(row)];
+        return ref < 0 ? null : artistTable[ref];
+    }
+
+    public String getPath(int row) { return paths[check(row)]; }
+
+    public long getAlbumId(int row) { return albumIds[check(row)]; }
+
+    public long getDuration(int row) { return durations[check(row)]; }
+
+    /**
+     * @return The precomputed {@link TextNormalizer#searchKey(String, String)} of the row.
+     */
+    public String getSearchKey(int row) { return searchKeys[check(row)]; }
+
+    /**
+     * @return The row with this MediaStore id, or -1.
+     */
+    public int rowOfId(long id) {
+        LongIntMap index = idIndex;
+        if (index == null) {
+            index = new LongIntMap(size);
+            for (int i = 0; i < size; i++) index.put(ids[i], i);
+            idIndex = index;
+        }
+        return index.get(id);
+    }
+
+    /**
+     * @return The row with this file path, or -1.
+     */
+    public int rowOfPath(String path) {
+        Map<String, Integer> index = pathIndex;
+        if (index == null) {
+            index = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                if (paths[i] != null) index.put(paths[i], i);
+            }
+            pathIndex = index;
+        }
+        Integer row = index.get(path);
+        return row != null ? row : -1;
+    }
+
+    /**
+     * Materializes one row as a Song, e.g. to hand it to a dialog or the player.
+     */
+    public Song getSong(int row) {
+        check(row);
+        return new Song(ids[row], titles[row], getArtist(row), paths[row], albumIds[row], durations[row]);
+    }
+
+    /**
+     * Materializes every row. Only use this where a Song list is really required.
+     */
+    public ArrayList<Song> toSongList() {
+        ArrayList<Song> songs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) songs.add(getSong(i));
+        return songs;
+    }
+
+    private int check(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + ", size " + size);
+        }
+        return row;
+    }
+}
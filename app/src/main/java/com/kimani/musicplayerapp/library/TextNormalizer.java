@@ -0,0 +1,80 @@
+package com.kimani.musicplayerapp.library;
+
+import java.text.Normalizer;
+
+/**
+ * TextNormalizer produces the search form of titles, artists and queries, so "Beyoncé",
+ * "BEYONCE" and full-width "Beyonce" all compare equal:
+ * <ol>
+ *   <li>NFKD decomposition, which splits accented letters into a base letter and a combining
+ *       mark and maps compatibility forms (full-width letters, ligatures) to plain ones;</li>
+ *   <li>combining marks are dropped;</li>
+ *   <li>letters are lower-cased one char at a time with {@link Character#toLowerCase(char)},
+ *       which does not depend on the device locale (String.toLowerCase() with a Turkish locale
+ *       would turn "I" into a dotless "ı"), and a few letters NFKD leaves alone are folded
+ *       to their base letter.</li>
+ * </ol>
+ * Plain lower-case ASCII, the common case, is returned as is without allocating.
+ *
+ * Search keys are computed once per track and stored with the library (see
+ * {@link SongStore#getSearchKey(int)}); bump {@link LibrarySnapshot}'s format version when
+ * these rules change so stored keys are rebuilt.
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer() {}
+
+    /**
+     * @return The search form of the text; "" for null.
+     */
+    public static String normalize(String text) {
+        if (text == null) return "";
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c >= 0x80 || (c >= 'A' && c <= 'Z')) break;
+            i++;
+        }
+        if (i == length) return text;
+
+        // ASCII with upper case letters: lower-case in place of a full decomposition
+        boolean ascii = true;
+        for (int j = i; j < length && ascii; j++) ascii = text.charAt(j) < 0x80;
+        if (ascii) {
+            char[] chars = text.toCharArray();
+            for (int j = i; j < length; j++) {
+                if (chars[j] >= 'A' && chars[j] <= 'Z') chars[j] += 'a' - 'A';
+            }
+            return new String(chars);
+        }
+
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder out = new StringBuilder(decomposed.length());
+        for (int j = 0; j < decomposed.length(); j++) {
+            char c = decomposed.charAt(j);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) out.append(fold(c));
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return The key a track is indexed and deduplicated by: normalized, trimmed title and
+     * artist joined by a newline.
+     */
+    public static String searchKey(String title, String artist) {
+        return normalize(title).trim() + '\n' + normalize(artist).trim();
+    }
+
+    private static char fold(char c) {
+        switch (c) {
+            case '\u0131': return 'i';                  // Dotless i (Turkish)
+            case '\u00F8': case '\u00D8': return 'o';   // o with stroke
+            case '\u0142': case '\u0141': return 'l';   // l with stroke
+            case '\u0111': case '\u0110': return 'd';   // d with stroke
+            case '\u0127': case '\u0126': return 'h';   // h with stroke
+            case '\u03C2': return '\u03C3';             // Greek final sigma
+            default: return Character.toLowerCase(c);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.kimani.musicplayerapp.library;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VolumeScanner reads the library one storage volume at a time (internal storage, SD cards,
+ * USB drives). Volumes are scanned in parallel on a small, bounded pool, each into its own
+ * title-ordered {@link SongStore}, which the caller merges with
+ * {@link MutableSongStore#appendMerged(List)}. Scanning per volume also lets a single volume be
+ * re-read when it is mounted again, without touching the others.
+ */
+final class VolumeScanner {
+
+    private static final String TAG = "VolumeScanner";
+
+    // Volumes share one MediaStore process, so more threads than this only add contention
+    private static final int MAX_PARALLEL_VOLUMES = 3;
+
+    private final Context appContext;
+    private final ContentResolver resolver;
+    private final ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_PARALLEL_VOLUMES, MAX_PARALLEL_VOLUMES,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+
+    VolumeScanner(Context appContext) {
+        this.appContext = appContext;
+        this.resolver = appContext.getContentResolver();
+        pool.allowCoreThreadTimeOut(true); // No idle threads once the scan is over
+    }
+
+    /**
+     * @return The names of the mounted external volumes. Before Android 10 volumes cannot be
+     * queried separately, so the merged {@link MediaStore#VOLUME_EXTERNAL} view is the only one.
+     */
+    Set<String> externalVolumes() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return MediaStore.getExternalVolumeNames(appContext);
+        }
+        return Collections.singleton(MediaStore.VOLUME_EXTERNAL);
+    }
+
+    /**
+     * Scans several volumes in parallel. A volume that fails (e.g. it was removed mid-scan) is
+     * logged and left out of the result, so the caller can retry it later.
+     * @return The rows of each scanned volume, in title order.
+     */
+    Map<String, SongStore> scanAll(Collection<String> volumes) {
+        Map<String, Future<SongStore>> pending = new LinkedHashMap<>();
+        for (String volume : volumes) {
+            pending.put(volume, pool.submit(() -> scan(volume)));
+        }
+
+        Map<String, SongStore> parts = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<SongStore>> entry : pending.entrySet()) {
+            try {
+                parts.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Could not scan volume " + entry.getKey(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Reads every music row of one volume on the calling thread.
+     */
+    SongStore scan(String volume) {
+        MutableSongStore part = new MutableSongStore();
+        try (Cursor cursor = resolver.query(MediaStore.Audio.Media.getContentUri(volume),
+                LibraryRepository.PROJECTION, LibraryRepository.MUSIC_SELECTION, null, LibraryRepository.SORT_ORDER)) {
+            if (cursor != null) {
+                LibraryRepository.ColumnIndexes c = new LibraryRepository.ColumnIndexes(cursor);
+                while (cursor.moveToNext()) {
+                    part.append(cursor.getLong(c.id), cursor.getString(c.title),
+                            cursor.getString(c.artist), cursor.getString(c.data),
+                            cursor.getLong(c.albumId), cursor.getLong(c.duration));
+                }
+            }
+        }
+        // MediaStore's collation may differ from SongOrder; the merge needs SongOrder
+        if (!part.isSorted()) part.sort();
+        return part.snapshot();
+    }
+
+    /**
+     * @return The volumes present in {@code a} but not in {@code b}.
+     */
+    static List<String> difference(Set<String> a, Set<String> b) {
+        List<String> result = new ArrayList<>();
+        for (String volume : a) {
+            if (!b.contains(volume)) result.add(volume);
+        }
+        return result;
+    }
+}
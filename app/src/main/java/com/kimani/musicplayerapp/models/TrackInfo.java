@@ -1,5 +1,7 @@
 package com.kimani.musicplayerapp.models;
 
+import com.google.firebase.firestore.Exclude;
+
 /**
  * TrackInfo is a generic model used to represent song metadata in the UI.
  * It serves as a bridge between different song data sources (MediaStore and Firestore).
@@ -11,6 +13,7 @@ public class TrackInfo {
     private String subtitle;  // Usually stores the artist or additional info
     private String url;       // Path to the audio (local file path or remote URL)
     private String coverUrl;  // URL or path to the album art/thumbnail
+    private long localId = -1; // MediaStore id for on-device tracks, -1 for remote ones
 
     /**
      * Required empty constructor for Firebase Firestore deserialization.
@@ -28,6 +31,15 @@ public class TrackInfo {
         this.coverUrl = coverUrl;
     }
 
+    /**
+     * Creates a TrackInfo for an on-device track, keeping its numeric MediaStore id so screens
+     * can look the track up without parsing or comparing strings.
+     */
+    public TrackInfo(long localId, String title, String subtitle, String url, String coverUrl) {
+        this(String.valueOf(localId), title, subtitle, url, coverUrl);
+        this.localId = localId;
+    }
+
     // --- GETTER METHODS ---
 
     public String getId() { return id; }
@@ -45,4 +57,10 @@ public class TrackInfo {
     public String getUrl() { return url; }
     
     public String getCoverUrl() { return coverUrl; }
+
+    /**
+     * @return The MediaStore id of an on-device track, or -1 for remote tracks.
+     */
+    @Exclude
+    public long getLocalId() { return localId; }
 }
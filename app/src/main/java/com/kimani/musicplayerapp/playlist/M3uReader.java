@@ -0,0 +1,145 @@
+package com.kimani.musicplayerapp.playlist;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * M3uReader reads an M3U/M3U8 playlist one entry at a time, so a playlist of any length is
+ * parsed with a single line in memory. Understands plain lists of locations as well as
+ * extended M3U ("#EXTINF:seconds,title" before a location); other directives are skipped.
+ *
+ * Locations are returned as paths with forward slashes: "file://" URLs are decoded, Windows
+ * separators are turned around and relative paths (less any leading "./") are joined to the
+ * base directory, if one is known. Other URLs (streams) are returned unchanged.
+ */
+final class M3uReader implements Closeable {
+
+    /**
+     * One playlist entry. Title and duration are only known for extended M3U.
+     */
+    static final class Entry {
+        final String location;
+        final String title;          // null if not given
+        final long durationSeconds;  // -1 if not given
+
+        Entry(String location, String title, long durationSeconds) {
+            this.location = location;
+            this.title = title;
+            this.durationSeconds = durationSeconds;
+        }
+    }
+
+    private static final String EXTINF = "#EXTINF:";
+
+    private final BufferedReader reader;
+    private final String baseDir;
+    private boolean firstLine = true;
+
+    /**
+     * @param baseDir Directory relative locations are resolved against, or null to return them
+     *                as they are.
+     */
+    M3uReader(Reader reader, String baseDir) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.baseDir = baseDir;
+    }
+
+    /**
+     * @return The next entry, or null at the end of the playlist.
+     */
+    Entry next() throws IOException {
+        String title = null;
+        long duration = -1;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (firstLine) {
+                firstLine = false;
+                if (!line.isEmpty() && line.charAt(0) == '\uFEFF') line = line.substring(1); // Byte order mark
+            }
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            if (line.startsWith(EXTINF)) {
+                int comma = line.indexOf(',');
+                String info = comma < 0 ? line.substring(EXTINF.length()) : line.substring(EXTINF.length(), comma);
+                duration = parseDuration(info);
+                title = comma < 0 ? null : line.substring(comma + 1).trim();
+                if (title != null && title.isEmpty()) title = null;
+            } else if (line.charAt(0) != '#') {
+                return new Entry(toPath(line), title, duration);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads the seconds in "#EXTINF:123 key=value ...", ignoring attributes.
+     */
+    private static long parseDuration(String info) {
+        int end = 0;
+        if (end < info.length() && info.charAt(end) == '-') end++;
+        while (end < info.length() && Character.isDigit(info.charAt(end))) end++;
+        try {
+            return Math.max(-1, Long.parseLong(info.substring(0, end)));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String toPath(String location) {
+        if (location.regionMatches(true, 0, "file://", 0, 7)) {
+            String path = decodePercent(location.substring(7));
+            // file://localhost/path and file:///path both name /path
+            if (path.startsWith("localhost/")) path = path.substring(9);
+            return path;
+        }
+        if (location.contains("://")) return location;
+        String path = location.replace('\\', '/');
+        boolean absolute = path.startsWith("/") || (path.length() > 2 && path.charAt(1) == ':'); // C:/...
+        if (absolute) return path;
+        while (path.startsWith("./")) path = path.substring(2);
+        if (baseDir == null) return path;
+        return baseDir.endsWith("/") ? baseDir + path : baseDir + '/' + path;
+    }
+
+    /**
+     * Decodes %XX escapes as UTF-8 bytes. Unlike URLDecoder, leaves '+' alone: it is a literal
+     * character in file URLs.
+     */
+    static String decodePercent(String text) {
+        if (text.indexOf('%') < 0) return text;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length());
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); ) {
+            char c = text.charAt(i);
+            if (c == '%' && i + 2 < text.length() && hex(text.charAt(i + 1)) >= 0 && hex(text.charAt(i + 2)) >= 0) {
+                bytes.write(hex(text.charAt(i + 1)) * 16 + hex(text.charAt(i + 2)));
+                i += 3;
+                continue;
+            }
+            if (bytes.size() > 0) {
+                out.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+                bytes.reset();
+            }
+            out.append(c);
+            i++;
+        }
+        if (bytes.size() > 0) out.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        return out.toString();
+    }
+
+    private static int hex(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+}
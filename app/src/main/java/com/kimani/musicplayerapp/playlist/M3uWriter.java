@@ -0,0 +1,90 @@
+package com.kimani.musicplayerapp.playlist;
+
+import com.kimani.musicplayerapp.library.PlaylistResolver;
+import com.kimani.musicplayerapp.library.SongStore;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * M3uWriter writes an extended M3U playlist one entry at a time, so exporting never holds the
+ * whole playlist in memory. Entries with known metadata get an "#EXTINF:seconds,Artist - Title"
+ * line before their path, which other players show without reading the files. Text is kept on
+ * one line, and a path that would read as a directive ("#...") is written as "./#...", so
+ * {@link M3uReader} reads back every entry that was written.
+ */
+final class M3uWriter implements Closeable {
+
+    private static final String UNKNOWN_ARTIST = "<unknown>"; // MediaStore's placeholder
+
+    private final BufferedWriter writer;
+
+    M3uWriter(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+    }
+
+    void writeHeader() throws IOException {
+        writer.write("#EXTM3U\n");
+    }
+
+    /**
+     * Writes one playlist member. A track in the library is written with its current path,
+     * title, artist and duration; a path no longer in the library is written as stored.
+     * @return False if nothing was written: the member is a MediaStore id no longer in the
+     * library, which leaves no path to write.
+     */
+    boolean writeMember(SongStore songs, String member) throws IOException {
+        boolean isId = PlaylistResolver.isId(member);
+        int row = isId ? songs.rowOfId(Long.parseLong(member)) : songs.rowOfPath(member);
+        if (row >= 0) {
+            String artist = songs.getArtist(row);
+            writeEntry(songs.getPath(row), songs.getTitle(row),
+                    UNKNOWN_ARTIST.equals(artist) ? null : artist, songs.getDuration(row));
+        } else if (!isId) {
+            writeEntry(member, null, null, 0);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param title      Display title, or null to write the path alone.
+     * @param artist     Artist, or null.
+     * @param durationMs Duration, or 0 if unknown.
+     */
+    void writeEntry(String path, String title, String artist, long durationMs) throws IOException {
+        if (title != null) {
+            writer.write("#EXTINF:");
+            writer.write(durationMs > 0 ? Long.toString(durationMs / 1000) : "-1");
+            writer.write(',');
+            if (artist != null && !artist.isEmpty()) {
+                writer.write(oneLine(artist));
+                writer.write(" - ");
+            }
+            writer.write(oneLine(title));
+            writer.write('\n');
+        }
+        if (path.startsWith("#")) writer.write("./");
+        writer.write(oneLine(path));
+        writer.write('\n');
+    }
+
+    /**
+     * Writes out buffered entries without closing the underlying stream.
+     */
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private static String oneLine(String text) {
+        return text.indexOf('\n') < 0 && text.indexOf('\r') < 0 ? text : text.replace('\r', ' ').replace('\n', ' ');
+    }
+}
@@ -0,0 +1,223 @@
+package com.kimani.musicplayerapp.playlist;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.kimani.musicplayerapp.library.LibraryRepository;
+import com.kimani.musicplayerapp.library.PlaylistResolver;
+import com.kimani.musicplayerapp.library.SongStore;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * PlaylistDatabase holds the user's playlists, including Favorites, in two tables: one row per
+ * playlist and one row per entry. Entries reference their playlist by id, so renaming or
+ * deleting a playlist touches one row, and adding a song writes one row instead of rewriting
+ * the whole set. Entries carry the MediaStore id of their track when it is known, indexed, so
+ * finding the playlists that contain a track does not scan every entry. Entries are ordered by
+ * a gapped position key (see {@link SortKeys}), so moving one rewrites only its own row.
+ *
+ * The database runs in write-ahead logging mode: a commit appends the changed pages to the
+ * log instead of rewriting them in place, so an add, remove or move costs about the size of
+ * the change, whatever the size of the playlist. Opening the database replays the log, and
+ * SQLite folds it back into the main file (a checkpoint) once it grows past 100 pages (the
+ * Android default), on the thread whose commit crossed that size: the store's thread for the
+ * *Async writes, the caller's thread for the blocking ones (see {@link PlaylistStore}).
+ *
+ * Playlists used to be StringSets in the "Playlists" SharedPreferences; they are copied over
+ * once, when the database is created, and the preferences are cleared afterwards.
+ */
+class PlaylistDatabase extends SQLiteOpenHelper {
+
+    private static final String TAG = "PlaylistDatabase";
+    private static final String DATABASE_NAME = "playlists.db";
+    private static final int DATABASE_VERSION = 2;
+
+    /** The SharedPreferences file playlists were kept in before this database. */
+    private static final String LEGACY_PREFS = "Playlists";
+
+    static final String TABLE_PLAYLISTS = "playlists";
+    static final String TABLE_ENTRIES = "playlist_entries";
+
+    private final Context appContext;
+    private boolean migrated; // Set by onCreate; the legacy preferences are cleared in onOpen
+
+    PlaylistDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        appContext = context;
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PLAYLISTS + " ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "name TEXT NOT NULL UNIQUE, "
+                + "created_at INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_ENTRIES + " ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "playlist_id INTEGER NOT NULL REFERENCES " + TABLE_PLAYLISTS + "(_id) ON DELETE CASCADE, "
+                + "member TEXT NOT NULL, "
+                + "track_id INTEGER, "
+                + "added_at INTEGER NOT NULL, "
+                + "position INTEGER NOT NULL DEFAULT 0, "
+                + "UNIQUE (playlist_id, member))");
+        db.execSQL("CREATE INDEX entries_track_id ON " + TABLE_ENTRIES + " (track_id)");
+        db.execSQL("CREATE INDEX entries_position ON " + TABLE_ENTRIES + " (playlist_id, position)");
+        migrateLegacyPlaylists(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Playlists are user data: upgrade in place, never drop
+        if (oldVersion < 2) {
+            // Keep the insertion order version 1 listed entries in
+            db.execSQL("ALTER TABLE " + TABLE_ENTRIES + " ADD COLUMN position INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("UPDATE " + TABLE_ENTRIES + " SET position = _id * " + SortKeys.GAP);
+            db.execSQL("CREATE INDEX entries_position ON " + TABLE_ENTRIES + " (playlist_id, position)");
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        if (migrated) {
+            // Only now is the copy committed
+            appContext.getSharedPreferences(LEGACY_PREFS, Context.MODE_PRIVATE).edit().clear().apply();
+            migrated = false;
+        }
+    }
+
+    /**
+     * Copies every StringSet in the legacy preferences into the new tables, inside the
+     * onCreate transaction: if anything fails, neither the tables nor the copy are kept and the
+     * preferences are left untouched for the next attempt.
+     */
+    private void migrateLegacyPlaylists(SQLiteDatabase db) {
+        SharedPreferences prefs = appContext.getSharedPreferences(LEGACY_PREFS, Context.MODE_PRIVATE);
+        Map<String, ?> legacy = prefs.getAll();
+        if (legacy.isEmpty()) return;
+
+        SongStore songs = librarySongs(appContext);
+        long now = System.currentTimeMillis();
+        int entries = 0;
+        for (Map.Entry<String, ?> playlist : legacy.entrySet()) {
+            if (!(playlist.getValue() instanceof Set)) continue;
+            long playlistId = insertPlaylist(db, playlist.getKey(), now);
+            @SuppressWarnings("unchecked")
+            Set<String> members = (Set<String>) playlist.getValue();
+            int index = 0;
+            for (String member : members) {
+                if (member != null && insertEntry(db, playlistId, member, trackIdOf(songs, member),
+                        now, SortKeys.at(index))) {
+                    entries++;
+                    index++;
+                }
+            }
+        }
+        migrated = true;
+        Log.d(TAG, "Migrated " + legacy.size() + " playlists (" + entries + " entries) from SharedPreferences");
+    }
+
+    // =====================================================================================
+    // HELPERS (called with the database open, under the store's lock)
+    // =====================================================================================
+
+    static long insertPlaylist(SQLiteDatabase db, String name, long createdAt) {
+        ContentValues values = new ContentValues();
+        values.put("name", name);
+        values.put("created_at", createdAt);
+        return db.insertWithOnConflict(TABLE_PLAYLISTS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    /**
+     * @return True if the entry was added, false if the playlist already had it.
+     */
+    static boolean insertEntry(SQLiteDatabase db, long playlistId, String member, long trackId,
+                               long addedAt, long position) {
+        ContentValues values = new ContentValues();
+        values.put("playlist_id", playlistId);
+        values.put("member", member);
+        if (trackId >= 0) values.put("track_id", trackId);
+        values.put("added_at", addedAt);
+        values.put("position", position);
+        return db.insertWithOnConflict(TABLE_ENTRIES, null, values, SQLiteDatabase.CONFLICT_IGNORE) != -1;
+    }
+
+    /**
+     * @return The position key after the playlist's last entry.
+     */
+    static long nextPosition(SQLiteDatabase db, long playlistId) {
+        try (Cursor cursor = db.rawQuery("SELECT MAX(position) FROM " + TABLE_ENTRIES
+                + " WHERE playlist_id = ?", new String[]{String.valueOf(playlistId)})) {
+            return cursor.moveToFirst() && !cursor.isNull(0)
+                    ? SortKeys.between(cursor.getLong(0), SortKeys.NONE) : SortKeys.at(0);
+        }
+    }
+
+    /**
+     * @return The entry's position key, or {@link SortKeys#NONE} if the playlist does not have it.
+     */
+    static long positionOf(SQLiteDatabase db, long playlistId, String member) {
+        try (Cursor cursor = db.rawQuery("SELECT position FROM " + TABLE_ENTRIES
+                + " WHERE playlist_id = ? AND member = ?", new String[]{String.valueOf(playlistId), member})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : SortKeys.NONE;
+        }
+    }
+
+    /**
+     * Gives the playlist's entries evenly spaced keys again, keeping their order. Runs in one
+     * transaction.
+     */
+    static void renumber(SQLiteDatabase db, long playlistId) {
+        db.beginTransaction();
+        try (Cursor cursor = db.rawQuery("SELECT _id FROM " + TABLE_ENTRIES
+                + " WHERE playlist_id = ? ORDER BY position, _id", new String[]{String.valueOf(playlistId)});
+             SQLiteStatement update = db.compileStatement(
+                     "UPDATE " + TABLE_ENTRIES + " SET position = ? WHERE _id = ?")) {
+            int index = 0;
+            while (cursor.moveToNext()) {
+                update.bindLong(1, SortKeys.at(index++));
+                update.bindLong(2, cursor.getLong(0));
+                update.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return The current library, for {@link #trackIdOf}; empty if it cannot be read (e.g. no
+     * storage permission yet), in which case path members are stored without a track id.
+     */
+    static SongStore librarySongs(Context context) {
+        try {
+            return LibraryRepository.getInstance(context).getSongs();
+        } catch (SecurityException e) {
+            Log.e(TAG, "Library unavailable; storing playlist entries without track ids", e);
+            return SongStore.EMPTY;
+        }
+    }
+
+    /**
+     * @return The MediaStore id of the member's track: the member itself for ids, the library's
+     * id for the path otherwise; -1 if the path is not in the library.
+     */
+    static long trackIdOf(SongStore songs, String member) {
+        if (PlaylistResolver.isId(member)) return Long.parseLong(member);
+        int row = songs.rowOfPath(member);
+        return row >= 0 ? songs.getId(row) : -1;
+    }
+}
@@ -0,0 +1,550 @@
+package com.kimani.musicplayerapp.playlist;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.kimani.musicplayerapp.library.LibraryRepository;
+import com.kimani.musicplayerapp.library.PathMatcher;
+import com.kimani.musicplayerapp.library.PlaylistResolver;
+import com.kimani.musicplayerapp.library.SongStore;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * PlaylistStore is the single place playlists are read and written, backed by
+ * {@link PlaylistDatabase}. A playlist member is a string, as before: a track's file path for
+ * playlists built in the song picker, or its MediaStore id for {@link #FAVORITES}; resolve
+ * members to songs with {@link LibraryRepository#resolveAsync}.
+ *
+ * The *Async methods run on the store's own thread and deliver their result on the main
+ * thread, so the UI never waits on the database. The blocking methods run on the caller's
+ * thread and are for code that is already off the main thread, such as the autocomplete
+ * worker. Either way, writes are serialized on the store's lock, so they never interleave;
+ * an export streams its rows outside the lock, which write-ahead logging allows. Whichever
+ * call comes first opens the database, which on first launch also migrates the legacy
+ * playlists and scans the library to match their entries.
+ */
+public class PlaylistStore {
+
+    private static final String TAG = "PlaylistStore";
+
+    /** The playlist the "Add to favourites" action fills, by MediaStore id. */
+    public static final String FAVORITES = "Favorites";
+
+    /** Unresolved entries listed by name in a {@link TransferResult}; the rest are counted. */
+    public static final int MAX_REPORTED_UNRESOLVED = 100;
+
+    // Imported entries written per transaction
+    private static final int IMPORT_BATCH = 500;
+
+    /**
+     * Receives the playlist catalog on the main thread: once when registered, then after every
+     * change to a playlist's name, size or first entry.
+     */
+    public interface CatalogListener {
+        void onCatalogChanged(List<PlaylistSummary> catalog);
+    }
+
+    /**
+     * Receives one playlist's members in playlist order, on the main thread.
+     */
+    public interface MembersListener {
+        void onMembersLoaded(List<String> members);
+    }
+
+    /**
+     * Receives the number of rows a write added or changed, on the main thread.
+     */
+    public interface EditListener {
+        void onEditApplied(int affected);
+    }
+
+    /**
+     * Receives the outcome of an M3U import or export on the main thread; null if the file
+     * could not be read or written.
+     */
+    public interface TransferListener {
+        void onTransferFinished(TransferResult result);
+    }
+
+    /**
+     * Outcome of an M3U import or export.
+     */
+    public static final class TransferResult {
+        /** Entries added to the playlist (import) or written to the file (export). */
+        public int entries;
+        /** Entries that could not be matched to a track. */
+        public int unresolvedCount;
+        /** The first {@link #MAX_REPORTED_UNRESOLVED} unresolved locations or ids. */
+        public final List<String> unresolved = new ArrayList<>();
+
+        void addUnresolved(String location) {
+            if (unresolved.size() < MAX_REPORTED_UNRESOLVED) unresolved.add(location);
+            unresolvedCount++;
+        }
+    }
+
+    private static PlaylistStore instance;
+
+    private final Context appContext;
+    private final PlaylistDatabase database;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<CatalogListener> catalogListeners = new CopyOnWriteArrayList<>();
+
+    private PlaylistStore(Context context) {
+        appContext = context;
+        database = new PlaylistDatabase(context);
+    }
+
+    /**
+     * @return The shared store. Opening (and, the first time, migrating) the database is
+     * deferred to the first operation.
+     */
+    public static synchronized PlaylistStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new PlaylistStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // =====================================================================================
+    // ASYNC API
+    // =====================================================================================
+
+    /**
+     * Registers a listener and delivers the current catalog to it. Call from the main thread.
+     */
+    public void addCatalogListener(CatalogListener listener) {
+        catalogListeners.add(listener);
+        executor.execute(() -> {
+            List<PlaylistSummary> catalog = getCatalog();
+            mainHandler.post(() -> {
+                if (catalogListeners.contains(listener)) listener.onCatalogChanged(catalog);
+            });
+        });
+    }
+
+    public void removeCatalogListener(CatalogListener listener) {
+        catalogListeners.remove(listener);
+    }
+
+    public void loadMembersAsync(String playlist, MembersListener listener) {
+        executor.execute(() -> {
+            List<String> members = getMembers(playlist);
+            mainHandler.post(() -> listener.onMembersLoaded(members));
+        });
+    }
+
+    /**
+     * Creates an empty playlist; the listener gets 0 if the name is already taken.
+     */
+    public void createPlaylistAsync(String name, EditListener listener) {
+        executor.execute(() -> {
+            int created = createPlaylist(name) ? 1 : 0;
+            mainHandler.post(() -> listener.onEditApplied(created));
+        });
+    }
+
+    /**
+     * Adds the members to the playlist, creating it if needed; the listener gets the number
+     * that were not already in it.
+     */
+    public void addMembersAsync(String playlist, Collection<String> members, EditListener listener) {
+        List<String> copy = new ArrayList<>(members);
+        executor.execute(() -> {
+            int added = addMembers(playlist, copy);
+            mainHandler.post(() -> listener.onEditApplied(added));
+        });
+    }
+
+    /**
+     * Removes the members from the playlist; the listener gets the number that were in it.
+     */
+    public void removeMembersAsync(String playlist, Collection<String> members, EditListener listener) {
+        List<String> copy = new ArrayList<>(members);
+        executor.execute(() -> {
+            int removed = removeMembers(playlist, copy);
+            mainHandler.post(() -> listener.onEditApplied(removed));
+        });
+    }
+
+    /**
+     * Moves a member between two others; see {@link #moveMember}. The listener gets 1 if the
+     * member moved.
+     */
+    public void moveMemberAsync(String playlist, String member, String before, String after,
+                                EditListener listener) {
+        executor.execute(() -> {
+            int moved = moveMember(playlist, member, before, after) ? 1 : 0;
+            mainHandler.post(() -> listener.onEditApplied(moved));
+        });
+    }
+
+    // =====================================================================================
+    // BLOCKING API (background threads only)
+    // =====================================================================================
+
+    /**
+     * @return Every playlist name, sorted by name.
+     */
+    public synchronized List<String> getPlaylistNames() {
+        List<String> names = new ArrayList<>();
+        try (Cursor cursor = database.getReadableDatabase().rawQuery(
+                "SELECT name FROM " + PlaylistDatabase.TABLE_PLAYLISTS + " ORDER BY name", null)) {
+            while (cursor.moveToNext()) names.add(cursor.getString(0));
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to read playlist names", e);
+        }
+        return names;
+    }
+
+    /**
+     * @return Every playlist's name, entry count and cover track, sorted by name. Counts and
+     * covers are read from the (playlist_id, position) index; no member is loaded.
+     */
+    public synchronized List<PlaylistSummary> getCatalog() {
+        List<PlaylistSummary> catalog = new ArrayList<>();
+        try (Cursor cursor = database.getReadableDatabase().rawQuery(
+                "SELECT p.name,"
+                        + " (SELECT COUNT(*) FROM " + PlaylistDatabase.TABLE_ENTRIES + " e"
+                        + " WHERE e.playlist_id = p._id),"
+                        + " (SELECT e.track_id FROM " + PlaylistDatabase.TABLE_ENTRIES + " e"
+                        + " WHERE e.playlist_id = p._id AND e.track_id IS NOT NULL"
+                        + " ORDER BY e.position LIMIT 1)"
+                        + " FROM " + PlaylistDatabase.TABLE_PLAYLISTS + " p ORDER BY p.name", null)) {
+            while (cursor.moveToNext()) {
+                catalog.add(new PlaylistSummary(cursor.getString(0), cursor.getInt(1),
+                        cursor.isNull(2) ? -1 : cursor.getLong(2)));
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to read the playlist catalog", e);
+        }
+        return catalog;
+    }
+
+    /**
+     * @return The playlist's members in playlist order; empty if it does not exist.
+     */
+    public synchronized List<String> getMembers(String playlist) {
+        List<String> members = new ArrayList<>();
+        try (Cursor cursor = database.getReadableDatabase().rawQuery(
+                "SELECT e.member FROM " + PlaylistDatabase.TABLE_ENTRIES + " e"
+                        + " JOIN " + PlaylistDatabase.TABLE_PLAYLISTS + " p ON p._id = e.playlist_id"
+                        + " WHERE p.name = ? ORDER BY e.position, e._id", new String[]{playlist})) {
+            while (cursor.moveToNext()) members.add(cursor.getString(0));
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to read playlist " + playlist, e);
+        }
+        return members;
+    }
+
+    /**
+     * @return True if the playlist was created, false if the name is taken.
+     */
+    public synchronized boolean createPlaylist(String name) {
+        try {
+            boolean created = PlaylistDatabase.insertPlaylist(database.getWritableDatabase(), name,
+                    System.currentTimeMillis()) != -1;
+            if (created) publishCatalog();
+            return created;
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to create playlist " + name, e);
+            return false;
+        }
+    }
+
+    /**
+     * Adds the members at the end of the playlist in one transaction, creating it if needed.
+     * @return The number of members that were not already in the playlist.
+     */
+    public synchronized int addMembers(String playlist, Collection<String> members) {
+        SongStore songs = null;
+        for (String member : members) {
+            if (member != null && !PlaylistResolver.isId(member)) {
+                songs = PlaylistDatabase.librarySongs(appContext);
+                break;
+            }
+        }
+
+        int added;
+        try {
+            added = insertMembers(playlist, members, songs);
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to add to playlist " + playlist, e);
+            return 0;
+        }
+        publishCatalog(); // Also covers a playlist created by this call
+        return added;
+    }
+
+    /**
+     * Appends the members in one transaction, creating the playlist if needed.
+     * @param songs The library, to look up the track ids of path members; null if every member
+     *              is an id.
+     */
+    private synchronized int insertMembers(String playlist, Collection<String> members, SongStore songs) {
+        int added = 0;
+        long now = System.currentTimeMillis();
+        SQLiteDatabase db = database.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long playlistId = playlistId(db, playlist);
+            if (playlistId < 0) playlistId = PlaylistDatabase.insertPlaylist(db, playlist, now);
+            long position = PlaylistDatabase.nextPosition(db, playlistId);
+            for (String member : members) {
+                if (member == null) continue;
+                long trackId = songs == null ? Long.parseLong(member) : PlaylistDatabase.trackIdOf(songs, member);
+                if (PlaylistDatabase.insertEntry(db, playlistId, member, trackId, now, position)) {
+                    added++;
+                    position += SortKeys.GAP;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return added;
+    }
+
+    /**
+     * Removes the members in one transaction; the other entries keep their keys.
+     * @return The number of members that were in the playlist.
+     */
+    public synchronized int removeMembers(String playlist, Collection<String> members) {
+        int removed = 0;
+        try {
+            SQLiteDatabase db = database.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                long playlistId = playlistId(db, playlist);
+                if (playlistId < 0) return 0;
+                String id = String.valueOf(playlistId);
+                for (String member : members) {
+                    if (member == null) continue;
+                    removed += db.delete(PlaylistDatabase.TABLE_ENTRIES, "playlist_id = ? AND member = ?",
+                            new String[]{id, member});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to remove from playlist " + playlist, e);
+            return 0;
+        }
+        if (removed > 0) publishCatalog();
+        return removed;
+    }
+
+    /**
+     * Moves a member to sit between two neighbours by giving it a key between theirs, so only
+     * the moved entry's row is written. If the keys there have become crowded, renumbering the
+     * playlist is queued on the store's thread; only when two neighbours have no key left
+     * between them (not normally reached, see {@link SortKeys}) is it renumbered first.
+     * @param before The member that will precede it, or null to move it to the start.
+     * @param after  The member that will follow it, or null to move it to the end.
+     * @return True if the member moved; false if it, or a neighbour, is not in the playlist, if
+     * it is one of its own neighbours, or if the neighbours are out of order (e.g. stale), which
+     * leaves no key between them.
+     */
+    public synchronized boolean moveMember(String playlist, String member, String before, String after) {
+        if (member.equals(before) || member.equals(after)) return false;
+        int moved;
+        long beforeKey = SortKeys.NONE;
+        long key = SortKeys.NONE;
+        long afterKey = SortKeys.NONE;
+        try {
+            SQLiteDatabase db = database.getWritableDatabase();
+            // Lookup, renumber and update commit together, or not at all
+            db.beginTransaction();
+            try {
+                long playlistId = playlistId(db, playlist);
+                if (playlistId < 0) return false;
+                for (int attempt = 0; attempt < 2 && key == SortKeys.NONE; attempt++) {
+                    if (attempt > 0) PlaylistDatabase.renumber(db, playlistId);
+                    beforeKey = before == null ? SortKeys.NONE : PlaylistDatabase.positionOf(db, playlistId, before);
+                    afterKey = after == null ? SortKeys.NONE : PlaylistDatabase.positionOf(db, playlistId, after);
+                    if ((before != null && beforeKey == SortKeys.NONE) || (after != null && afterKey == SortKeys.NONE)) {
+                        return false;
+                    }
+                    key = SortKeys.between(beforeKey, afterKey);
+                }
+                if (key == SortKeys.NONE) return false; // Still no room: the neighbours are inverted
+
+                ContentValues values = new ContentValues();
+                values.put("position", key);
+                moved = db.update(PlaylistDatabase.TABLE_ENTRIES, values, "playlist_id = ? AND member = ?",
+                        new String[]{String.valueOf(playlistId), member});
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to move an entry in playlist " + playlist, e);
+            return false;
+        }
+        if (moved > 0 && SortKeys.crowded(beforeKey, key, afterKey)) {
+            executor.execute(() -> renumber(playlist));
+        }
+        if (moved > 0) publishCatalog(); // The first entry, and so the cover, may have changed
+        return moved > 0;
+    }
+
+    /**
+     * Sends the catalog to the registered listeners, read on the store's thread after any
+     * write already queued.
+     */
+    private void publishCatalog() {
+        if (catalogListeners.isEmpty()) return;
+        executor.execute(() -> {
+            List<PlaylistSummary> catalog = getCatalog();
+            mainHandler.post(() -> {
+                for (CatalogListener listener : catalogListeners) {
+                    listener.onCatalogChanged(catalog);
+                }
+            });
+        });
+    }
+
+    private synchronized void renumber(String playlist) {
+        try {
+            SQLiteDatabase db = database.getWritableDatabase();
+            long playlistId = playlistId(db, playlist);
+            if (playlistId >= 0) PlaylistDatabase.renumber(db, playlistId);
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to renumber playlist " + playlist, e);
+        }
+    }
+
+    // =====================================================================================
+    // M3U IMPORT / EXPORT
+    // =====================================================================================
+
+    /**
+     * Reads an M3U/M3U8 playlist and appends the tracks found in the library, in file order.
+     * The file is parsed one entry at a time and each location is matched through the library's
+     * path index (exact path first, then folder and file name, see {@link PathMatcher}); matches
+     * are written {@link #IMPORT_BATCH} at a time, so memory use does not grow with the file.
+     * Entries already in the playlist are skipped.
+     */
+    public TransferResult importM3u(InputStream in, String playlist) throws IOException {
+        SongStore songs = PlaylistDatabase.librarySongs(appContext);
+        PathMatcher matcher = new PathMatcher(songs);
+        M3uReader reader = new M3uReader(new InputStreamReader(in, StandardCharsets.UTF_8), null);
+        TransferResult result = new TransferResult();
+        List<String> batch = new ArrayList<>(IMPORT_BATCH);
+        try {
+            for (M3uReader.Entry entry = reader.next(); entry != null; entry = reader.next()) {
+                int row = matcher.rowOf(entry.location);
+                if (row < 0) {
+                    result.addUnresolved(entry.location);
+                    continue;
+                }
+                batch.add(songs.getPath(row));
+                if (batch.size() == IMPORT_BATCH) {
+                    result.entries += insertMembers(playlist, batch, songs);
+                    batch.clear();
+                }
+            }
+            // Also creates the playlist if nothing matched
+            result.entries += insertMembers(playlist, batch, songs);
+        } finally {
+            publishCatalog();
+        }
+        return result;
+    }
+
+    /**
+     * Writes the playlist as extended M3U (UTF-8), one entry at a time straight from the
+     * database cursor. Tracks in the library are written with their current path, title, artist
+     * and duration; paths no longer in the library are written as stored. Favorites entries
+     * whose id is no longer in the library have no path to write and are reported unresolved.
+     */
+    public TransferResult exportM3u(String playlist, OutputStream out) throws IOException {
+        SongStore songs = PlaylistDatabase.librarySongs(appContext);
+        TransferResult result = new TransferResult();
+        M3uWriter writer = new M3uWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try (Cursor cursor = database.getReadableDatabase().rawQuery(
+                "SELECT e.member FROM " + PlaylistDatabase.TABLE_ENTRIES + " e"
+                        + " JOIN " + PlaylistDatabase.TABLE_PLAYLISTS + " p ON p._id = e.playlist_id"
+                        + " WHERE p.name = ? ORDER BY e.position, e._id", new String[]{playlist})) {
+            writer.writeHeader();
+            while (cursor.moveToNext()) {
+                String member = cursor.getString(0);
+                if (writer.writeMember(songs, member)) {
+                    result.entries++;
+                } else {
+                    result.addUnresolved(member);
+                }
+            }
+        }
+        writer.flush();
+        return result;
+    }
+
+    /**
+     * Imports from a document (e.g. picked with ACTION_OPEN_DOCUMENT) on the store's thread.
+     * The listener gets null if the document could not be read.
+     */
+    public void importM3uAsync(Uri source, String playlist, TransferListener listener) {
+        executor.execute(() -> {
+            TransferResult result = null;
+            try (InputStream in = appContext.getContentResolver().openInputStream(source)) {
+                if (in == null) throw new FileNotFoundException(source.toString());
+                result = importM3u(in, playlist);
+            } catch (IOException | SQLiteException | SecurityException e) {
+                Log.e(TAG, "Failed to import " + source + " into " + playlist, e);
+            }
+            TransferResult delivered = result;
+            mainHandler.post(() -> listener.onTransferFinished(delivered));
+        });
+    }
+
+    /**
+     * Exports to a document (e.g. created with ACTION_CREATE_DOCUMENT) on the store's thread.
+     * The listener gets null if the document could not be written.
+     */
+    public void exportM3uAsync(String playlist, Uri target, TransferListener listener) {
+        executor.execute(() -> {
+            TransferResult result = null;
+            try (OutputStream out = appContext.getContentResolver().openOutputStream(target, "wt")) {
+                if (out == null) throw new FileNotFoundException(target.toString());
+                result = exportM3u(playlist, out);
+            } catch (IOException | SQLiteException | SecurityException e) {
+                Log.e(TAG, "Failed to export " + playlist + " to " + target, e);
+            }
+            TransferResult delivered = result;
+            mainHandler.post(() -> listener.onTransferFinished(delivered));
+        });
+    }
+
+    /**
+     * @return The playlist's row id, or -1 if there is none with that name.
+     */
+    private static long playlistId(SQLiteDatabase db, String name) {
+        try (Cursor cursor = db.rawQuery("SELECT _id FROM " + PlaylistDatabase.TABLE_PLAYLISTS
+                + " WHERE name = ?", new String[]{name})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.kimani.musicplayerapp.playlist;
+
+/**
+ * PlaylistSummary is one playlist as the carousels show it: its name, how many entries it has
+ * and a track to take the cover from, read without loading its members.
+ */
+public final class PlaylistSummary {
+
+    private final String name;
+    private final int trackCount;
+    private final long coverTrackId;
+
+    PlaylistSummary(String name, int trackCount, long coverTrackId) {
+        this.name = name;
+        this.trackCount = trackCount;
+        this.coverTrackId = coverTrackId;
+    }
+
+    public String getName() { return name; }
+
+    public int getTrackCount() { return trackCount; }
+
+    /**
+     * @return The MediaStore id of the first entry with a known track, or -1 if there is none
+     * (empty playlist, or no entry matched the library when it was added).
+     */
+    public long getCoverTrackId() { return coverTrackId; }
+}
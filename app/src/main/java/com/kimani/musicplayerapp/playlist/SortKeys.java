@@ -0,0 +1,50 @@
+package com.kimani.musicplayerapp.playlist;
+
+/**
+ * SortKeys orders playlist entries by gapped integer keys. Entries are numbered
+ * {@link #GAP} apart, so moving one between two neighbours takes the midpoint of their keys and
+ * only the moved entry's row is written. Each move into the same spot halves the gap there;
+ * once a gap drops below {@link #MIN_GAP} the playlist is renumbered, which with a gap of 2^20
+ * takes at least 16 moves into the same spot.
+ */
+final class SortKeys {
+
+    /** Distance between consecutive keys after appending or renumbering. */
+    static final long GAP = 1L << 20;
+
+    /** Gaps smaller than this make a playlist due for renumbering. */
+    static final long MIN_GAP = 16;
+
+    /** Marks a missing neighbour (start or end of the playlist), and "no room" from {@link #between}. */
+    static final long NONE = Long.MIN_VALUE;
+
+    private SortKeys() {}
+
+    /**
+     * @return The key of the entry at this index in a freshly numbered playlist.
+     */
+    static long at(int index) {
+        return (index + 1L) * GAP;
+    }
+
+    /**
+     * @param before Key of the entry that will precede the moved one, or {@link #NONE}.
+     * @param after  Key of the entry that will follow it, or {@link #NONE}.
+     * @return A key strictly between the two, or {@link #NONE} if they are adjacent and the
+     * playlist has to be renumbered first.
+     */
+    static long between(long before, long after) {
+        if (before == NONE && after == NONE) return at(0);
+        if (before == NONE) return after - GAP;
+        if (after == NONE) return before + GAP;
+        if (after - before < 2) return NONE;
+        return before + (after - before) / 2;
+    }
+
+    /**
+     * @return True if the key sits closer than {@link #MIN_GAP} to either neighbour.
+     */
+    static boolean crowded(long before, long key, long after) {
+        return (before != NONE && key - before < MIN_GAP) || (after != NONE && after - key < MIN_GAP);
+    }
+}
@@ -0,0 +1,136 @@
+package com.kimani.musicplayerapp.search;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.kimani.musicplayerapp.library.LibraryChange;
+import com.kimani.musicplayerapp.library.LibraryRepository;
+import com.kimani.musicplayerapp.library.SongStore;
+import com.kimani.musicplayerapp.playlist.PlaylistStore;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * AutocompleteEngine suggests completions for the search box from a {@link CompletionTrie} of
+ * track titles, artists and playlist names. Suggestions are weighted by listening habits:
+ * a title by its play count, decayed by how long ago it was last played (half-life
+ * {@link #RECENCY_HALF_LIFE_DAYS} days); an artist by the sum over its tracks; playlists get a
+ * fixed weight above unplayed tracks.
+ *
+ * The trie is built on the engine's worker thread when suggestions are first requested, and
+ * rebuilt on the next request after the library changes or once it is older than
+ * {@link #MAX_AGE_MS}, so new plays are reflected without rebuilding on every keystroke.
+ */
+public class AutocompleteEngine implements LibraryRepository.ChangeListener {
+
+    /**
+     * Receives suggestions on the main thread.
+     */
+    public interface SuggestionListener {
+        void onSuggestions(String prefix, List<String> suggestions);
+    }
+
+    /** Completions kept per trie node, and the most a request can return. */
+    public static final int MAX_SUGGESTIONS = 8;
+
+    private static final long MAX_AGE_MS = 10 * 60 * 1000;
+    private static final double RECENCY_HALF_LIFE_DAYS = 30;
+    private static final double PLAYLIST_WEIGHT = 2;
+    private static final String UNKNOWN_ARTIST = "<unknown>"; // MediaStore's placeholder
+
+    private static AutocompleteEngine instance;
+
+    private final LibraryRepository repository;
+    private final PlaylistStore playlists;
+    private final PlayHistory history;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on the worker thread
+    private CompletionTrie trie;
+    private long builtAt;
+    private boolean stale;
+
+    private AutocompleteEngine(Context context) {
+        repository = LibraryRepository.getInstance(context);
+        playlists = PlaylistStore.getInstance(context);
+        history = PlayHistory.getInstance(context);
+        repository.addChangeListener(this);
+    }
+
+    /**
+     * @return The shared engine. Call from the main thread.
+     */
+    public static synchronized AutocompleteEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new AutocompleteEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Looks up completions for the prefix on the worker thread.
+     */
+    public void suggestAsync(String prefix, SuggestionListener listener) {
+        worker.execute(() -> {
+            List<String> suggestions = ensureTrie().complete(prefix, MAX_SUGGESTIONS);
+            mainHandler.post(() -> listener.onSuggestions(prefix, suggestions));
+        });
+    }
+
+    /**
+     * Marks the trie for a rebuild on the next request; the rebuild itself waits until then.
+     */
+    @Override
+    public void onLibraryChanged(SongStore songs, List<LibraryChange> changes) {
+        worker.execute(() -> stale = true);
+    }
+
+    private CompletionTrie ensureTrie() {
+        long now = System.currentTimeMillis();
+        if (trie == null || stale || now - builtAt > MAX_AGE_MS) {
+            trie = build(now);
+            builtAt = now;
+            stale = false;
+        }
+        return trie;
+    }
+
+    private CompletionTrie build(long now) {
+        CompletionTrie.Builder builder = new CompletionTrie.Builder();
+        SongStore songs = repository.getSongs();
+        Map<String, Double> artistWeights = new HashMap<>();
+        for (int row = 0; row < songs.size(); row++) {
+            double played = playWeight(songs.getSearchKey(row), now);
+            builder.add(songs.getTitle(row), 1 + played);
+            String artist = songs.getArtist(row);
+            if (artist != null && !UNKNOWN_ARTIST.equals(artist)) {
+                Double sum = artistWeights.get(artist);
+                artistWeights.put(artist, (sum == null ? 1 : sum) + played);
+            }
+        }
+        for (Map.Entry<String, Double> artist : artistWeights.entrySet()) {
+            builder.add(artist.getKey(), artist.getValue());
+        }
+        for (String name : playlists.getPlaylistNames()) {
+            builder.add(name, PLAYLIST_WEIGHT);
+        }
+        return builder.build(MAX_SUGGESTIONS);
+    }
+
+    /**
+     * @return The play count, halved for every {@link #RECENCY_HALF_LIFE_DAYS} days since the
+     * last play.
+     */
+    private double playWeight(String trackKey, long now) {
+        int plays = history.getPlayCount(trackKey);
+        if (plays == 0) return 0;
+        double ageDays = Math.max(0, now - history.getLastPlayed(trackKey)) / 86_400_000.0;
+        return plays * Math.pow(0.5, ageDays / RECENCY_HALF_LIFE_DAYS);
+    }
+}
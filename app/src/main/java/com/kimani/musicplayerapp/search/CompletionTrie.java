@@ -0,0 +1,305 @@
+package com.kimani.musicplayerapp.search;
+
+import com.kimani.musicplayerapp.library.TextNormalizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CompletionTrie suggests completions for a typed prefix, best weighted first.
+ * Every node answers with the ids of the best {@code k} terms below it, so a lookup walks the
+ * prefix and reads the answer off one node; nothing below it is visited. Terms are numbered in
+ * descending weight order, which lets the build fill each list by simply appending the first
+ * {@code k} terms that pass through its node.
+ *
+ * Lists are only stored where they differ from the one below. A node with a single child that
+ * no term ends at has the same terms below it as that child, so it points at the child's list;
+ * past the first few characters most of the trie is such chains, one per term. Lists are packed
+ * into one array and hold at most as many ids as there are terms below the node, so a chain
+ * leading to one term stores one id, not {@code k}.
+ *
+ * Nodes are stored in flat arrays (label, first child, next sibling, list start and length) and
+ * only down to {@link #MAX_DEPTH} characters; longer prefixes are answered from the terms sorted
+ * by key.
+ * Terms starting with "the " are also reachable without it, so "beat" suggests "The Beatles".
+ * Immutable once built; create one with a {@link Builder}.
+ */
+public class CompletionTrie {
+
+    static final int MAX_DEPTH = 10;
+
+    /**
+     * Collects terms and their weights. A term added twice (same normalized text) keeps the
+     * first display text and the larger weight.
+     */
+    public static class Builder {
+        private final Map<String, Integer> termsByKey = new HashMap<>();
+        private final List<String> keys = new ArrayList<>();
+        private final List<String> texts = new ArrayList<>();
+        private final List<Double> weights = new ArrayList<>();
+
+        public Builder add(String text, double weight) {
+            if (text == null) return this;
+            String key = TextNormalizer.normalize(text).trim();
+            if (key.isEmpty()) return this;
+            Integer term = termsByKey.get(key);
+            if (term == null) {
+                termsByKey.put(key, keys.size());
+                keys.add(key);
+                texts.add(text.trim());
+                weights.add(weight);
+            } else if (weight > weights.get(term)) {
+                weights.set(term, weight);
+            }
+            return this;
+        }
+
+        /**
+         * @param k Number of completions kept per node, the most {@link #complete} can return.
+         */
+        public CompletionTrie build(int k) {
+            Integer[] order = new Integer[keys.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Double.compare(weights.get(b), weights.get(a)));
+            String[] sortedKeys = new String[order.length];
+            String[] sortedTexts = new String[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedKeys[i] = keys.get(order[i]);
+                sortedTexts[i] = texts.get(order[i]);
+            }
+            return new CompletionTrie(sortedKeys, sortedTexts, k);
+        }
+    }
+
+    private final String[] keys;   // Normalized terms; the index is the term id, best first
+    private final String[] texts;  // Display text, by term id
+    private final int k;
+    private final int[] byKey;     // Key entries sorted, for prefixes deeper than the trie; see entryKey
+
+    // Nodes; node 0 is the root
+    private char[] labels = new char[256];
+    private int[] firstChild = new int[256];
+    private int[] nextSibling = new int[256];
+    private int[] listStart;       // Where the node's list starts in lists; shared along chains
+    private int[] listLength;
+    private int[] lists;           // Term ids, best first, of every stored list
+    private int nodeCount = 1;
+
+    // Only used while building
+    private int[] passing = new int[256];   // Terms passing through each node, counted per insert
+    private boolean[] ends = new boolean[256];
+
+    private CompletionTrie(String[] keys, String[] texts, int k) {
+        this.keys = keys;
+        this.texts = texts;
+        this.k = k;
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+
+        for (int term = 0; term < keys.length; term++) {
+            insert(term, 0);
+            if (keys[term].startsWith("the ")) insert(term, 4);
+        }
+        labels = Arrays.copyOf(labels, nodeCount);
+        firstChild = Arrays.copyOf(firstChild, nodeCount);
+        nextSibling = Arrays.copyOf(nextSibling, nodeCount);
+        buildLists();
+        passing = null;
+        ends = null;
+
+        List<Integer> entries = new ArrayList<>(keys.length);
+        for (int term = 0; term < keys.length; term++) {
+            entries.add(term << 1);
+            if (keys[term].startsWith("the ")) entries.add(term << 1 | 1);
+        }
+        Collections.sort(entries, (a, b) -> compareFrom(keys[a >>> 1], offsetOf(a), keys[b >>> 1], offsetOf(b)));
+        byKey = new int[entries.size()];
+        for (int i = 0; i < byKey.length; i++) byKey[i] = entries.get(i);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return Up to {@code limit} (at most k) display texts starting with the prefix (leading
+     * spaces ignored), best first.
+     */
+    public List<String> complete(String prefix, int limit) {
+        // Keep a trailing space: "love " should not complete to "lovely"
+        String p = TextNormalizer.normalize(prefix);
+        int start = 0;
+        while (start < p.length() && p.charAt(start) <= ' ') start++;
+        p = p.substring(start);
+        limit = Math.min(limit, k);
+        if (p.isEmpty() || limit <= 0) return Collections.emptyList();
+        if (p.length() > MAX_DEPTH) return completeDeep(p, limit);
+
+        int node = 0;
+        for (int i = 0; i < p.length() && node >= 0; i++) {
+            node = child(node, p.charAt(i));
+        }
+        if (node < 0) return Collections.emptyList();
+        int count = Math.min(limit, listLength[node]);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(texts[lists[listStart[node] + i]]);
+        }
+        return result;
+    }
+
+    /** Nodes in the trie, root included. */
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    /** Term ids stored across all lists. */
+    int storedIds() {
+        return lists.length;
+    }
+
+    /**
+     * Answers prefixes longer than the trie from the sorted key entries: the matching range is
+     * small, and the smallest term ids in it are the best weighted.
+     */
+    private List<String> completeDeep(String p, int limit) {
+        int low = 0;
+        int high = byKey.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int entry = byKey[mid];
+            if (compareFrom(keys[entry >>> 1], offsetOf(entry), p, 0) < 0) low = mid + 1; else high = mid;
+        }
+        List<Integer> matches = new ArrayList<>();
+        for (int i = low; i < byKey.length; i++) {
+            int entry = byKey[i];
+            if (!keys[entry >>> 1].startsWith(p, offsetOf(entry))) break;
+            if (!matches.contains(entry >>> 1)) matches.add(entry >>> 1);
+        }
+        Collections.sort(matches);
+        List<String> result = new ArrayList<>(limit);
+        for (int i = 0; i < matches.size() && i < limit; i++) result.add(texts[matches.get(i)]);
+        return result;
+    }
+
+    /**
+     * Key entries are {@code term << 1}, plus 1 for the variant without a leading "the ".
+     */
+    private static int offsetOf(int entry) {
+        return (entry & 1) * 4;
+    }
+
+    /**
+     * Compares a.substring(aFrom) with b.substring(bFrom) without creating the substrings.
+     */
+    private static int compareFrom(String a, int aFrom, String b, int bFrom) {
+        int length = Math.min(a.length() - aFrom, b.length() - bFrom);
+        for (int i = 0; i < length; i++) {
+            char x = a.charAt(aFrom + i);
+            char y = b.charAt(bFrom + i);
+            if (x != y) return x - y;
+        }
+        return (a.length() - aFrom) - (b.length() - bFrom);
+    }
+
+    private void insert(int term, int from) {
+        String key = keys[term];
+        int node = 0;
+        int end = Math.min(key.length(), from + MAX_DEPTH);
+        for (int i = from; i < end; i++) {
+            char c = key.charAt(i);
+            int next = child(node, c);
+            if (next < 0) next = addChild(node, c);
+            node = next;
+            passing[node]++;
+        }
+        ends[node] = true;
+    }
+
+    /**
+     * Sizes and fills the lists of the nodes that store one, then points every chain node at
+     * the list of the node below it.
+     */
+    private void buildLists() {
+        listStart = new int[nodeCount];
+        listLength = new int[nodeCount];
+        int size = 0;
+        for (int node = 1; node < nodeCount; node++) {
+            if (!storesList(node)) continue;
+            listStart[node] = size;
+            size += Math.min(k, passing[node]);
+        }
+        lists = new int[size];
+
+        // Best terms first, so each list is filled in weight order
+        for (int term = 0; term < keys.length; term++) {
+            offerPath(term, 0);
+            if (keys[term].startsWith("the ")) offerPath(term, 4);
+        }
+
+        // Children are numbered after their parent, so a chain is resolved from its bottom up
+        for (int node = nodeCount - 1; node > 0; node--) {
+            if (storesList(node)) continue;
+            listStart[node] = listStart[firstChild[node]];
+            listLength[node] = listLength[firstChild[node]];
+        }
+    }
+
+    private boolean storesList(int node) {
+        return ends[node] || firstChild[node] < 0 || nextSibling[firstChild[node]] >= 0;
+    }
+
+    private void offerPath(int term, int from) {
+        String key = keys[term];
+        int node = 0;
+        int end = Math.min(key.length(), from + MAX_DEPTH);
+        for (int i = from; i < end; i++) {
+            node = child(node, key.charAt(i));
+            if (storesList(node)) offerTop(node, term);
+        }
+    }
+
+    /**
+     * Appends the term to the node's list unless it is full or already there (a term inserted
+     * twice, with and without "the ", can pass through the same node).
+     */
+    private void offerTop(int node, int term) {
+        int start = listStart[node];
+        int length = listLength[node];
+        if (length == k) return;
+        for (int i = 0; i < length; i++) {
+            if (lists[start + i] == term) return;
+        }
+        lists[start + length] = term;
+        listLength[node] = length + 1;
+    }
+
+    private int child(int node, char c) {
+        for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+            if (labels[child] == c) return child;
+        }
+        return -1;
+    }
+
+    private int addChild(int parent, char c) {
+        if (nodeCount == labels.length) {
+            int capacity = nodeCount * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            passing = Arrays.copyOf(passing, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            Arrays.fill(firstChild, nodeCount, capacity, -1);
+            Arrays.fill(nextSibling, nodeCount, capacity, -1);
+        }
+        int node = nodeCount++;
+        labels[node] = c;
+        nextSibling[node] = firstChild[parent];
+        firstChild[parent] = node;
+        return node;
+    }
+}
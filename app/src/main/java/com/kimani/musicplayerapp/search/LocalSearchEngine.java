@@ -0,0 +1,186 @@
+package com.kimani.musicplayerapp.search;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.kimani.musicplayerapp.Song;
+import com.kimani.musicplayerapp.library.LibraryChange;
+import com.kimani.musicplayerapp.library.LibraryRepository;
+import com.kimani.musicplayerapp.library.SongStore;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * LocalSearchEngine owns the process-wide {@link SearchIndex} of the local library.
+ * The index is built once, on first use, on the engine's own worker thread, and is then kept
+ * up to date from {@link LibraryRepository} change notifications. Queries run on the same
+ * thread, so the index is never read while it is being updated.
+ *
+ * When a query finds fewer than {@link #FUZZY_THRESHOLD} tracks, typo-tolerant matches are
+ * added, so "beatels" still finds "The Beatles".
+ *
+ * Libraries of {@link #LARGE_LIBRARY} tracks or more are also mirrored into
+ * {@link TrackSearchDatabase}. Once the mirror is complete (from this or an earlier session) the
+ * in-memory index is not built at all: queries run against the mirror on the worker thread, and
+ * also match album and folder names.
+ *
+ * Matches are ranked on the worker thread as well, so however many rows a short query finds,
+ * only the best {@code limit} of them are handed to the main thread.
+ */
+public class LocalSearchEngine implements LibraryRepository.ChangeListener {
+
+    /**
+     * Receives local search results on the main thread.
+     */
+    public interface ResultListener {
+        /**
+         * @param ranking The best local matches, ready for online results to be merged in.
+         */
+        void onLocalResults(ResultRanker ranking);
+    }
+
+    /** Exact result count below which fuzzy matches are added. */
+    static final int FUZZY_THRESHOLD = 5;
+    private static final int MAX_FUZZY_RESULTS = 50;
+
+    /** Library size from which the on-disk search mirror is kept and preferred. */
+    static final int LARGE_LIBRARY = 50_000;
+    private static final int MAX_MIRROR_RESULTS = 500;
+
+    private static LocalSearchEngine instance;
+
+    private final LibraryRepository repository;
+    private final TrackSearchDatabase mirror;
+    private final PlayHistory playHistory;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on the worker thread
+    private SearchIndex index;
+    private boolean useMirror;  // True when queries go to the mirror instead of the index
+    private SongStore songs = SongStore.EMPTY;
+
+    private LocalSearchEngine(Context context) {
+        repository = LibraryRepository.getInstance(context);
+        mirror = TrackSearchDatabase.getInstance(context);
+        playHistory = PlayHistory.getInstance(context);
+        repository.addChangeListener(this);
+    }
+
+    /**
+     * @return The shared engine. Call from the main thread.
+     */
+    public static synchronized LocalSearchEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocalSearchEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Builds the index in the background, so the first query does not pay for it.
+     */
+    public void warmUp() {
+        worker.execute(this::ensureIndex);
+    }
+
+    /**
+     * Searches titles and artists and ranks the matches on the worker thread.
+     * @param limit Number of local matches to keep.
+     */
+    public void searchAsync(String query, int limit, ResultListener listener) {
+        worker.execute(() -> {
+            ensureIndex();
+            SongStore current = songs;
+            int[] rows;
+            if (useMirror) {
+                rows = rowsOfIds(current, mirror.search(query, MAX_MIRROR_RESULTS));
+            } else {
+                int[] docs = index.search(query);
+                if (docs.length < FUZZY_THRESHOLD) {
+                    docs = union(docs, index.searchFuzzy(query, MAX_FUZZY_RESULTS));
+                }
+                long[] ids = new long[docs.length];
+                for (int i = 0; i < docs.length; i++) ids[i] = index.getSongId(docs[i]);
+                rows = rowsOfIds(current, ids);
+            }
+            ResultRanker ranking = new ResultRanker(query, playHistory, limit);
+            ranking.offerLocal(current, rows);
+            mainHandler.post(() -> listener.onLocalResults(ranking));
+        });
+    }
+
+    /**
+     * Applies library changes to the index on the worker thread.
+     */
+    @Override
+    public void onLibraryChanged(SongStore changed, List<LibraryChange> changes) {
+        worker.execute(() -> {
+            if (changed.size() >= LARGE_LIBRARY) mirror.syncAsync();
+            if (useMirror) {
+                songs = changed;
+                return;
+            }
+            if (index == null) return; // Not built yet; the build will see the new rows
+            for (LibraryChange change : changes) {
+                if (change.getOldSong() != null) {
+                    index.remove(change.getOldSong().getId());
+                }
+                Song song = change.getNewSong();
+                if (song != null) {
+                    index.add(song.getId(), song.getTitle(), song.getArtist());
+                }
+            }
+            songs = changed;
+        });
+    }
+
+    private void ensureIndex() {
+        if (index != null || useMirror) return;
+        songs = repository.getSongs();
+        if (songs.size() >= LARGE_LIBRARY) {
+            mirror.syncAsync();
+            if (mirror.isReady()) {
+                useMirror = true;
+                return;
+            }
+        }
+        index = new SearchIndex();
+        for (int row = 0; row < songs.size(); row++) {
+            index.add(songs.getId(row), songs.getSearchKey(row));
+        }
+    }
+
+    /**
+     * @return The doc ids in either array, each once.
+     */
+    private static int[] union(int[] exact, int[] fuzzy) {
+        if (fuzzy.length == 0) return exact;
+        int[] all = Arrays.copyOf(exact, exact.length + fuzzy.length);
+        System.arraycopy(fuzzy, 0, all, exact.length, fuzzy.length);
+        Arrays.sort(all);
+        int count = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (count == 0 || all[count - 1] != all[i]) all[count++] = all[i];
+        }
+        return Arrays.copyOf(all, count);
+    }
+
+    /**
+     * Maps MediaStore ids to rows of the current view, which are in title order once sorted.
+     */
+    private static int[] rowsOfIds(SongStore view, long[] ids) {
+        int[] rows = new int[ids.length];
+        int count = 0;
+        for (long id : ids) {
+            int row = view.rowOfId(id);
+            if (row >= 0) rows[count++] = row;
+        }
+        Arrays.sort(rows, 0, count);
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+}
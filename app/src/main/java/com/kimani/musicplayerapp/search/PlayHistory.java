@@ -0,0 +1,175 @@
+package com.kimani.musicplayerapp.search;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * PlayHistory counts how often, and how recently, each track was played. Tracks are keyed by
+ * {@link ResultRanker#trackKey(String, String)}, so a song counts as the same track whether it
+ * was played from the device or online.
+ *
+ * Counts are kept in a SQLite table, one row per track, so recording a play writes one row
+ * instead of rewriting every count. Rankers read them for each candidate, so they are also held
+ * in memory; that copy is loaded on the first read or write, which happens on a search worker
+ * or on the history's own write thread, never on the main thread. Plays are recorded on the
+ * write thread.
+ *
+ * Counts used to be kept in the "PlayHistory" SharedPreferences as "count,lastPlayedMillis";
+ * they are copied over once, when the database is created, and the preferences are cleared
+ * afterwards.
+ */
+public class PlayHistory extends SQLiteOpenHelper implements ResultRanker.PlayCounts {
+
+    private static final String TAG = "PlayHistory";
+    private static final String DATABASE_NAME = "play_history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_PLAYS = "plays";
+
+    /** The SharedPreferences file counts were kept in before this database. */
+    private static final String LEGACY_PREFS = "PlayHistory";
+
+    private static PlayHistory instance;
+
+    private final Context appContext;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private boolean migrated; // Set by onCreate; the legacy preferences are cleared in onOpen
+
+    // Loaded on first use, guarded by this
+    private Map<String, Integer> counts;
+    private Map<String, Long> lastPlayed;
+
+    private PlayHistory(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        appContext = context;
+    }
+
+    /**
+     * @return The shared history. Nothing is read until the first count is asked for.
+     */
+    public static synchronized PlayHistory getInstance(Context context) {
+        if (instance == null) {
+            instance = new PlayHistory(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PLAYS + " ("
+                + "track_key TEXT PRIMARY KEY, "
+                + "play_count INTEGER NOT NULL, "
+                + "last_played INTEGER NOT NULL)");
+        migrateLegacyCounts(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only version 1 exists so far
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        if (migrated) {
+            // Only now is the copy committed
+            appContext.getSharedPreferences(LEGACY_PREFS, Context.MODE_PRIVATE).edit().clear().apply();
+            migrated = false;
+        }
+    }
+
+    /**
+     * Records one play of a track on the write thread.
+     */
+    public void recordPlay(String title, String artist) {
+        String key = ResultRanker.trackKey(title, artist);
+        long now = System.currentTimeMillis();
+        writer.execute(() -> {
+            int count;
+            synchronized (this) {
+                ensureLoaded();
+                count = getPlayCount(key) + 1;
+                counts.put(key, count);
+                lastPlayed.put(key, now);
+            }
+            ContentValues values = new ContentValues();
+            values.put("track_key", key);
+            values.put("play_count", count);
+            values.put("last_played", now);
+            try {
+                getWritableDatabase().insertWithOnConflict(TABLE_PLAYS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Could not record a play", e);
+            }
+        });
+    }
+
+    /**
+     * Loads the history on first use; call off the main thread.
+     */
+    @Override
+    public synchronized int getPlayCount(String trackKey) {
+        ensureLoaded();
+        Integer count = counts.get(trackKey);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Loads the history on first use; call off the main thread.
+     * @return When the track was last played (epoch millis), or 0 if never.
+     */
+    public synchronized long getLastPlayed(String trackKey) {
+        ensureLoaded();
+        Long time = lastPlayed.get(trackKey);
+        return time == null ? 0 : time;
+    }
+
+    private void ensureLoaded() {
+        if (counts != null) return;
+        counts = new HashMap<>();
+        lastPlayed = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT track_key, play_count, last_played FROM " + TABLE_PLAYS, null)) {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getString(0), cursor.getInt(1));
+                lastPlayed.put(cursor.getString(0), cursor.getLong(2));
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Could not read the play history", e);
+        }
+    }
+
+    /**
+     * Copies the legacy preferences into the table, inside the onCreate transaction.
+     */
+    private void migrateLegacyCounts(SQLiteDatabase db) {
+        SharedPreferences prefs = appContext.getSharedPreferences(LEGACY_PREFS, Context.MODE_PRIVATE);
+        Map<String, ?> legacy = prefs.getAll();
+        if (legacy.isEmpty()) return;
+
+        ContentValues values = new ContentValues();
+        for (Map.Entry<String, ?> entry : legacy.entrySet()) {
+            String[] parts = String.valueOf(entry.getValue()).split(",");
+            try {
+                values.put("track_key", entry.getKey());
+                values.put("play_count", Integer.parseInt(parts[0]));
+                values.put("last_played", parts.length > 1 ? Long.parseLong(parts[1]) : 0L);
+            } catch (NumberFormatException e) {
+                continue; // Skip entries written by an incompatible version
+            }
+            db.insertWithOnConflict(TABLE_PLAYS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+        migrated = true;
+        Log.d(TAG, "Migrated " + legacy.size() + " play counts from SharedPreferences");
+    }
+}
@@ -0,0 +1,102 @@
+package com.kimani.musicplayerapp.search;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for posting lists: sorted, duplicate-free int arrays of document ids, each with a
+ * separate length so they can grow in place.
+ */
+final class PostingLists {
+
+    private PostingLists() {}
+
+    /**
+     * Intersects two posting lists into {@code out}, which may be either input: an output id is
+     * never written ahead of the position it was read from.
+     * When one list is much shorter, its ids are looked up in the other with a galloping search
+     * instead of walking both lists.
+     * @return The number of ids written to {@code out}.
+     */
+    static int intersect(int[] a, int aLength, int[] b, int bLength, int[] out) {
+        if (aLength > bLength) {
+            return intersect(b, bLength, a, aLength, out);
+        }
+        if (bLength / 8 > aLength) {
+            return gallopIntersect(a, aLength, b, bLength, out);
+        }
+        int i = 0, j = 0, n = 0;
+        while (i < aLength && j < bLength) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n;
+    }
+
+    private static int gallopIntersect(int[] a, int aLength, int[] b, int bLength, int[] out) {
+        int n = 0;
+        int from = 0;
+        for (int i = 0; i < aLength && from < bLength; i++) {
+            int value = a[i];
+            int step = 1;
+            int high = from;
+            while (high < bLength && b[high] < value) {
+                from = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int found = Arrays.binarySearch(b, from, Math.min(high + 1, bLength), value);
+            if (found >= 0) {
+                out[n++] = value;
+                from = found + 1;
+            } else {
+                from = -found - 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return The list to keep using, reallocated if it has no room for one more id.
+     */
+    static int[] ensureRoom(int[] list, int length) {
+        return length < list.length ? list : Arrays.copyOf(list, Math.max(4, length + (length >> 1)));
+    }
+
+    /**
+     * Inserts an id at its sorted position; the list must have room for it (see
+     * {@link #ensureRoom}). Ids are usually appended in increasing order, which takes the fast
+     * path.
+     * @return True if the id was inserted; the caller then increments the length. False if it
+     * was already present.
+     */
+    static boolean insert(int[] list, int length, int id) {
+        if (length == 0 || list[length - 1] < id) {
+            list[length] = id;
+            return true;
+        }
+        int at = Arrays.binarySearch(list, 0, length, id);
+        if (at >= 0) return false;
+        at = -at - 1;
+        System.arraycopy(list, at, list, at + 1, length - at);
+        list[at] = id;
+        return true;
+    }
+
+    /**
+     * Removes an id if present.
+     * @return True if the id was removed; the caller then decrements the length.
+     */
+    static boolean remove(int[] list, int length, int id) {
+        int at = Arrays.binarySearch(list, 0, length, id);
+        if (at < 0) return false;
+        System.arraycopy(list, at + 1, list, at, length - at - 1);
+        return true;
+    }
+}
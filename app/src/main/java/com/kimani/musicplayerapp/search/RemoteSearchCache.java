@@ -0,0 +1,107 @@
+package com.kimani.musicplayerapp.search;
+
+import com.kimani.musicplayerapp.models.TrackInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RemoteSearchCache keeps recent online search results, keyed by the prefix that was queried.
+ * A query is answered from the cache when the same prefix is cached, or when a shorter prefix
+ * is cached with a complete result: every title starting with "beat" also starts with "be", so
+ * filtering the "be" result in memory gives the "beat" result without a round trip.
+ *
+ * Entries expire after a TTL, and the least recently used entries are evicted once the cache
+ * holds more than a fixed number of tracks. Times are passed in by the caller so the cache
+ * does not depend on a particular clock. Not thread-safe.
+ */
+public class RemoteSearchCache {
+
+    private static final class Entry {
+        final List<TrackInfo> tracks;
+        final boolean complete; // True if the query returned every match, not just the first page
+        final long createdAt;
+
+        Entry(List<TrackInfo> tracks, boolean complete, long createdAt) {
+            this.tracks = tracks;
+            this.complete = complete;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final long ttlMs;
+    private final int maxTracks;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int cachedTracks = 0;
+
+    /**
+     * @param ttlMs     How long a result stays valid.
+     * @param maxTracks Upper bound on the number of tracks held across all entries.
+     */
+    public RemoteSearchCache(long ttlMs, int maxTracks) {
+        this.ttlMs = ttlMs;
+        this.maxTracks = maxTracks;
+    }
+
+    /**
+     * @return The cached or derived result for the prefix, or null if it has to be queried.
+     */
+    public List<TrackInfo> get(String prefix, long now) {
+        Entry exact = fresh(prefix, now);
+        if (exact != null) return exact.tracks;
+
+        for (int length = prefix.length() - 1; length > 0; length--) {
+            Entry shorter = fresh(prefix.substring(0, length), now);
+            if (shorter == null || !shorter.complete) continue;
+
+            List<TrackInfo> filtered = new ArrayList<>();
+            for (TrackInfo track : shorter.tracks) {
+                if (track.getTitle() != null && track.getTitle().startsWith(prefix)) filtered.add(track);
+            }
+            // A filtered complete result is complete too; it expires with its source
+            store(prefix, new Entry(Collections.unmodifiableList(filtered), true, shorter.createdAt));
+            return filtered;
+        }
+        return null;
+    }
+
+    /**
+     * Caches the result of a query.
+     * @param complete True if the result holds every match for the prefix.
+     */
+    public void put(String prefix, List<TrackInfo> tracks, boolean complete, long now) {
+        store(prefix, new Entry(Collections.unmodifiableList(new ArrayList<>(tracks)), complete, now));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry fresh(String prefix, long now) {
+        Entry entry = entries.get(prefix);
+        if (entry != null && now - entry.createdAt >= ttlMs) {
+            cachedTracks -= entry.tracks.size();
+            entries.remove(prefix);
+            return null;
+        }
+        return entry;
+    }
+
+    private void store(String prefix, Entry entry) {
+        Entry old = entries.put(prefix, entry);
+        if (old != null) cachedTracks -= old.tracks.size();
+        cachedTracks += entry.tracks.size();
+
+        // Evict least recently used entries, but always keep the one just stored
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (cachedTracks > maxTracks && entries.size() > 1) {
+            Map.Entry<String, Entry> victim = eldest.next();
+            cachedTracks -= victim.getValue().tracks.size();
+            eldest.remove();
+        }
+    }
+}
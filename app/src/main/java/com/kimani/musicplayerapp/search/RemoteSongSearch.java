@@ -0,0 +1,68 @@
+package com.kimani.musicplayerapp.search;
+
+import android.os.SystemClock;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.kimani.musicplayerapp.models.TrackInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RemoteSongSearch looks up online songs in the Firestore "songs" collection by title prefix.
+ * Results are kept in a process-wide {@link RemoteSearchCache}, so typing further or
+ * backspacing over a prefix that was already fetched does not query Firestore again.
+ */
+public class RemoteSongSearch {
+
+    // A page smaller than this holds every match, which lets longer prefixes filter it
+    private static final int MAX_RESULTS = 100;
+    private static final long CACHE_TTL_MS = 5 * 60 * 1000;
+    private static final int CACHE_MAX_TRACKS = 2000;
+
+    // Shared by every search screen; only touched on the main thread
+    private static final RemoteSearchCache cache = new RemoteSearchCache(CACHE_TTL_MS, CACHE_MAX_TRACKS);
+
+    /**
+     * Receives remote results on the main thread. Failed queries report an empty list.
+     */
+    public interface ResultListener {
+        void onRemoteResults(List<TrackInfo> tracks);
+    }
+
+    private final FirebaseFirestore db;
+
+    public RemoteSongSearch(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    /**
+     * Uses a range query to find titles starting with the query string. Cached results are
+     * delivered right away. Call from the main thread.
+     */
+    public void search(String query, ResultListener listener) {
+        List<TrackInfo> cached = cache.get(query, SystemClock.elapsedRealtime());
+        if (cached != null) {
+            listener.onRemoteResults(cached);
+            return;
+        }
+
+        db.collection("songs")
+                .whereGreaterThanOrEqualTo("title", query)
+                .whereLessThanOrEqualTo("title", query + "\uf8ff")
+                .limit(MAX_RESULTS)
+                .get()
+                .addOnCompleteListener(task -> {
+                    List<TrackInfo> tracks = new ArrayList<>();
+                    if (task.isSuccessful() && task.getResult() != null) {
+                        for (QueryDocumentSnapshot document : task.getResult()) {
+                            tracks.add(document.toObject(TrackInfo.class));
+                        }
+                        // Failed queries are not cached, so they are retried next time
+                        cache.put(query, tracks, tracks.size() < MAX_RESULTS, SystemClock.elapsedRealtime());
+                    }
+                    listener.onRemoteResults(tracks);
+                });
+    }
+}
@@ -0,0 +1,190 @@
+package com.kimani.musicplayerapp.search;
+
+import com.kimani.musicplayerapp.library.SongStore;
+import com.kimani.musicplayerapp.library.TextNormalizer;
+import com.kimani.musicplayerapp.models.TrackInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * ResultRanker merges local and online search results into one ranked list.
+ * Local rows are deduplicated by MediaStore id, so two files that share a title and artist are
+ * both listed. An online result is dropped when a local match has the same canonical track key
+ * (normalized title and artist), so a song found on the device and online appears once, as the
+ * local copy; online results are otherwise deduplicated by their own id. Each result is scored
+ * by how well it matches (exact, prefix, word prefix, substring; title over artist) plus a bonus
+ * for how often it was played. Only the best {@code limit} results are kept, in a bounded
+ * min-heap, so TrackInfo objects are only built for rows that will be shown.
+ *
+ * Local matches can be many thousands, so they are ranked once, off the main thread, by
+ * {@link LocalSearchEngine}; {@link #results(List)} then merges online results into a copy of
+ * that short list, leaving the local ranking as it was for the next merge.
+ */
+public class ResultRanker {
+
+    /** Number of results shown by the search screen. */
+    public static final int DEFAULT_LIMIT = 50;
+
+    /**
+     * Source of play counts, keyed by {@link #trackKey(String, String)}.
+     */
+    public interface PlayCounts {
+        int getPlayCount(String trackKey);
+    }
+
+    private static final class Scored {
+        final int score;
+        final int order;        // Offer order; earlier wins ties (local rows are in title order)
+        final TrackInfo track;  // Online result, or null for a local row
+        final int row;
+
+        Scored(int score, int order, TrackInfo track, int row) {
+            this.score = score;
+            this.order = order;
+            this.track = track;
+            this.row = row;
+        }
+
+        boolean betterThan(Scored other) {
+            return score != other.score ? score > other.score : order < other.order;
+        }
+    }
+
+    private final String query;
+    private final PlayCounts playCounts;
+    private final int limit;
+    private final Set<Long> localIds;
+    private final Set<String> localKeys;  // Track keys of every local match, kept or not
+    private final Set<String> remoteIds;
+    // Worst kept result at the head, so it is the one replaced
+    private final PriorityQueue<Scored> heap;
+    private SongStore songs = SongStore.EMPTY;
+    private int offered = 0;
+
+    public ResultRanker(String query, PlayCounts playCounts, int limit) {
+        this.query = TextNormalizer.normalize(query).trim();
+        this.playCounts = playCounts;
+        this.limit = limit;
+        localIds = new HashSet<>();
+        localKeys = new HashSet<>();
+        remoteIds = new HashSet<>();
+        heap = new PriorityQueue<>((a, b) -> a.betterThan(b) ? 1 : -1);
+    }
+
+    /**
+     * Copies the kept results; the local sets are shared, as local rows are no longer offered.
+     */
+    private ResultRanker(ResultRanker other) {
+        query = other.query;
+        playCounts = other.playCounts;
+        limit = other.limit;
+        localIds = other.localIds;
+        localKeys = other.localKeys;
+        remoteIds = new HashSet<>(other.remoteIds);
+        heap = new PriorityQueue<>(other.heap);
+        songs = other.songs;
+        offered = other.offered;
+    }
+
+    /**
+     * @return The key under which a track is deduplicated and its plays are counted.
+     */
+    public static String trackKey(String title, String artist) {
+        return TextNormalizer.searchKey(title, artist);
+    }
+
+    /**
+     * Offers local matches; offer them before online results so local copies win duplicates.
+     * Local rows use the search keys stored with the library, so nothing is normalized here.
+     */
+    public void offerLocal(SongStore songs, int[] rows) {
+        this.songs = songs;
+        for (int row : rows) {
+            if (!localIds.add(songs.getId(row))) continue;
+            String key = songs.getSearchKey(row);
+            localKeys.add(key);
+            offer(key, null, row);
+        }
+    }
+
+    public void offerRemote(List<TrackInfo> tracks) {
+        for (TrackInfo track : tracks) {
+            String key = trackKey(track.getTitle(), track.getSubtitle());
+            if (localKeys.contains(key)) continue;
+            if (track.getId() != null && !remoteIds.add(track.getId())) continue;
+            offer(key, track, -1);
+        }
+    }
+
+    /**
+     * Merges online results into a copy of this ranking. Costs O(limit + remote), however many
+     * local rows were offered, and leaves this ranking unchanged.
+     * @return The best results, best first.
+     */
+    public List<TrackInfo> results(List<TrackInfo> remote) {
+        ResultRanker merged = new ResultRanker(this);
+        merged.offerRemote(remote);
+        return merged.results();
+    }
+
+    /**
+     * @return The best results, best first.
+     */
+    public List<TrackInfo> results() {
+        List<Scored> best = new ArrayList<>(heap);
+        Collections.sort(best, (a, b) -> a.betterThan(b) ? -1 : 1);
+        List<TrackInfo> tracks = new ArrayList<>(best.size());
+        for (Scored scored : best) {
+            if (scored.track != null) {
+                tracks.add(scored.track);
+            } else {
+                int row = scored.row;
+                tracks.add(new TrackInfo(songs.getId(row), songs.getTitle(row), songs.getArtist(row),
+                        songs.getPath(row), ""));
+            }
+        }
+        return tracks;
+    }
+
+    private void offer(String key, TrackInfo track, int row) {
+        int split = key.indexOf('\n');
+        int score = Math.max(matchScore(key, 0, split, 100), matchScore(key, split + 1, key.length(), 50))
+                + playBonus(playCounts.getPlayCount(key));
+        Scored scored = new Scored(score, offered++, track, row);
+        if (heap.size() < limit) {
+            heap.add(scored);
+        } else if (scored.betterThan(heap.peek())) {
+            heap.poll();
+            heap.add(scored);
+        }
+    }
+
+    /**
+     * Scores how the query matches key[start, end): exact beats prefix beats word prefix beats
+     * substring. {@code exact} is the score of an exact match; the others are fractions of it.
+     */
+    int matchScore(String key, int start, int end, int exact) {
+        int length = end - start;
+        if (query.isEmpty() || query.length() > length) return 0;
+        if (length == query.length() && key.startsWith(query, start)) return exact;
+        if (key.startsWith(query, start)) return exact * 6 / 10;
+        for (int i = key.indexOf(query, start + 1); i >= 0 && i + query.length() <= end; i = key.indexOf(query, i + 1)) {
+            if (!Character.isLetterOrDigit(key.charAt(i - 1))) return exact * 4 / 10;
+        }
+        int at = key.indexOf(query, start);
+        return at >= 0 && at + query.length() <= end ? exact * 2 / 10 : 0;
+    }
+
+    /**
+     * Grows with the logarithm of the play count and is capped, so a favourite outranks a
+     * slightly better match but never an exact title match.
+     */
+    static int playBonus(int plays) {
+        return Math.min(32, 8 * (32 - Integer.numberOfLeadingZeros(plays)));
+    }
+}
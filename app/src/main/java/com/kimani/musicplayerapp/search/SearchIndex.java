@@ -0,0 +1,372 @@
+package com.kimani.musicplayerapp.search;
+
+import com.kimani.musicplayerapp.library.LongIntMap;
+import com.kimani.musicplayerapp.library.SongStore;
+import com.kimani.musicplayerapp.library.TextNormalizer;
+
+import java.util.Arrays;
+
+/**
+ * SearchIndex is an in-memory inverted index over the titles and artists of the local library.
+ * Every track is a document with a stable doc id (rows shift when the library changes, doc ids
+ * do not). Two kinds of posting lists map to the documents that contain them:
+ * <ul>
+ *   <li>trigrams of the search key ({@link TextNormalizer}), for substring queries of 3+ characters;</li>
+ *   <li>the 1 and 2 character prefixes of each word, for very short queries.</li>
+ * </ul>
+ * A query intersects the posting lists of its grams, shortest first, and only the few surviving
+ * candidates are verified against the stored keys. Tracks are added and removed one at a time,
+ * so the index follows library changes without a rebuild.
+ *
+ * Typing usually extends the previous query. Every track containing "queen" also contains "que",
+ * so when a query contains the previous one, the previous matches are filtered instead of
+ * going back to the posting lists. Deleting or editing characters mid-query, or any change to
+ * the index, falls back to a full lookup.
+ *
+ * {@link #searchFuzzy(String, int)} tolerates typos: documents sharing enough trigrams with the
+ * query are counted from the same posting lists, then checked with a bounded edit distance.
+ *
+ * Not thread-safe: use it from one thread (see {@link LocalSearchEngine}).
+ */
+public class SearchIndex {
+
+    private static final long PREFIX_KEY = 1L << 62; // Marks word-prefix keys apart from trigrams
+    private static final int MAX_FUZZY_CHECKS = 1000; // Bounds the edit distance work per query
+    private static final int MIN_SKIP_LIBRARY = 1000;  // Library size from which common trigrams are skipped
+
+    // Documents, addressed by doc id
+    private long[] songIds = new long[64];
+    private String[] keys = new String[64]; // Search keys, null for free doc ids
+    private int docLimit = 0;               // Doc ids below this have been handed out
+    private int[] freeDocs = new int[16];
+    private int freeCount = 0;
+    private final LongIntMap docsBySongId = new LongIntMap();
+
+    // Posting lists, addressed through the gram key
+    private final LongIntMap listsByGram = new LongIntMap();
+    private int[][] postings = new int[64][];
+    private int[] postingLengths = new int[64];
+    private int listCount = 0;
+
+    // Scratch buffers reused across calls
+    private long[] gramBuffer = new long[64];
+    private int[] candidates = new int[64];
+    private int[] gramHits = new int[64];    // Per doc: query trigrams it contains (fuzzy search)
+    private int[] ranked = new int[64];      // Fuzzy candidates ordered by trigram hits
+    private int[] editRow = new int[32];     // One row of the edit distance table
+
+    // Matches of the last substring query, for refining it as the user keeps typing
+    private String lastQuery;                // Null when there is nothing to refine
+    private int[] lastMatches = new int[64];
+    private int lastMatchCount = 0;
+
+    public int size() {
+        return docsBySongId.size();
+    }
+
+    /**
+     * @return The MediaStore id of the track behind a doc id returned by {@link #search(String)}.
+     */
+    public long getSongId(int doc) {
+        return songIds[doc];
+    }
+
+    /**
+     * Indexes a track, replacing it if it was already indexed.
+     */
+    public void add(long songId, String title, String artist) {
+        add(songId, TextNormalizer.searchKey(title, artist));
+    }
+
+    /**
+     * Indexes a track by its precomputed search key (see {@link SongStore#getSearchKey(int)}),
+     * replacing it if it was already indexed. The key is kept, not copied.
+     */
+    public void add(long songId, String key) {
+        remove(songId);
+        lastQuery = null;
+        int doc = freeCount > 0 ? freeDocs[--freeCount] : docLimit++;
+        if (doc == songIds.length) {
+            songIds = Arrays.copyOf(songIds, doc * 2);
+            keys = Arrays.copyOf(keys, doc * 2);
+        }
+        songIds[doc] = songId;
+        keys[doc] = key;
+        docsBySongId.put(songId, doc);
+
+        int gramCount = collectGrams(key);
+        for (int i = 0; i < gramCount; i++) {
+            int list = listsByGram.get(gramBuffer[i]);
+            if (list == LongIntMap.MISSING) {
+                list = newList(gramBuffer[i]);
+            }
+            postings[list] = PostingLists.ensureRoom(postings[list], postingLengths[list]);
+            // The length only grows if the doc was not listed already
+            if (PostingLists.insert(postings[list], postingLengths[list], doc)) {
+                postingLengths[list]++;
+            }
+        }
+    }
+
+    /**
+     * Removes a track from the index, if present.
+     */
+    public void remove(long songId) {
+        int doc = docsBySongId.remove(songId);
+        if (doc == LongIntMap.MISSING) return;
+        lastQuery = null;
+
+        int gramCount = collectGrams(keys[doc]);
+        for (int i = 0; i < gramCount; i++) {
+            int list = listsByGram.get(gramBuffer[i]);
+            if (list != LongIntMap.MISSING && PostingLists.remove(postings[list], postingLengths[list], doc)) {
+                postingLengths[list]--;
+            }
+        }
+        keys[doc] = null;
+        if (freeCount == freeDocs.length) freeDocs = Arrays.copyOf(freeDocs, freeCount * 2);
+        freeDocs[freeCount++] = doc;
+    }
+
+    /**
+     * Finds the tracks whose title or artist contains the query (queries of 3+ characters), or
+     * has a word starting with it (shorter queries). A query containing the previous one is
+     * answered by filtering the previous matches.
+     * @return Matching doc ids in ascending order.
+     */
+    public int[] search(String query) {
+        String q = TextNormalizer.normalize(query).trim();
+        if (q.isEmpty()) return new int[0];
+
+        if (q.length() < 3) {
+            int list = listsByGram.get(prefixKey(q, 0, q.length()));
+            return list == LongIntMap.MISSING ? new int[0] : Arrays.copyOf(postings[list], postingLengths[list]);
+        }
+
+        int matches = 0;
+        if (lastQuery != null && q.contains(lastQuery)) {
+            // Refinement: the new matches are a subset of the previous ones
+            for (int i = 0; i < lastMatchCount; i++) {
+                if (keys[lastMatches[i]].contains(q)) lastMatches[matches++] = lastMatches[i];
+            }
+        } else {
+            int count = intersectTrigrams(q);
+            for (int i = 0; i < count; i++) {
+                // Trigrams can match in different places; confirm the whole query is there
+                if (keys[candidates[i]].contains(q)) candidates[matches++] = candidates[i];
+            }
+            // Keep the matches for the next keystroke; the old buffer becomes scratch space
+            int[] swap = lastMatches;
+            lastMatches = candidates;
+            candidates = swap;
+        }
+        lastQuery = q;
+        lastMatchCount = matches;
+        return Arrays.copyOf(lastMatches, matches);
+    }
+
+    /**
+     * Finds tracks whose title or artist contains the query with up to one typo (two for queries
+     * of 6+ characters): a substitution, insertion or deletion of one character each.
+     * Candidates must share at least {@code trigrams - 3 * edits} of the query's trigrams (one
+     * edit breaks at most three), and at least one; the best candidates are checked first, and
+     * at most {@link #MAX_FUZZY_CHECKS} of them, so the cost stays flat on large libraries.
+     * @param limit Stop after this many matches.
+     * @return Matching doc ids, best trigram overlap first.
+     */
+    public int[] searchFuzzy(String query, int limit) {
+        String q = TextNormalizer.normalize(query).trim();
+        if (q.length() < 4) return new int[0]; // Short queries would match almost anything
+        int maxEdits = q.length() < 6 ? 1 : 2;
+
+        int gramCount = 0;
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            gramCount = addGram(gramCount, trigramKey(q, i));
+        }
+        Arrays.sort(gramBuffer, 0, gramCount);
+        int unique = 0;
+        for (int i = 0; i < gramCount; i++) {
+            if (unique == 0 || gramBuffer[unique - 1] != gramBuffer[i]) gramBuffer[unique++] = gramBuffer[i];
+        }
+
+        // Count, per document, how many of the query's trigrams it contains. In a large library,
+        // trigrams found in over half the tracks say little and cost the most, so they are
+        // skipped (and not required) unless the rarer trigrams find nothing.
+        if (gramHits.length < docLimit) gramHits = new int[Math.max(docLimit, gramHits.length * 2)];
+        int commonLength = size() >= MIN_SKIP_LIBRARY ? size() / 2 : Integer.MAX_VALUE;
+        int common = 0;
+        int touched = countHits(unique, commonLength);
+        if (touched == 0) {
+            commonLength = Integer.MAX_VALUE;
+            touched = countHits(unique, commonLength);
+        }
+        for (int g = 0; g < unique; g++) {
+            int list = listsByGram.get(gramBuffer[g]);
+            if (list != LongIntMap.MISSING && postingLengths[list] > commonLength) common++;
+        }
+        int minHits = Math.max(1, unique - common - 3 * maxEdits);
+
+        // Order candidates by hits, most first (counting sort), dropping those below the bound
+        int[] starts = new int[unique + 2];
+        for (int i = 0; i < touched; i++) {
+            int hits = gramHits[candidates[i]];
+            if (hits >= minHits) starts[unique - hits + 1]++;
+        }
+        for (int h = 1; h < starts.length; h++) starts[h] += starts[h - 1];
+        int rankedCount = starts[starts.length - 1];
+        if (ranked.length < rankedCount) ranked = new int[Math.max(rankedCount, ranked.length * 2)];
+        for (int i = 0; i < touched; i++) {
+            int doc = candidates[i];
+            int hits = gramHits[doc];
+            gramHits[doc] = 0;
+            if (hits >= minHits) ranked[starts[unique - hits]++] = doc;
+        }
+
+        // Verify the best candidates first: more shared trigrams, more likely a close match
+        int[] matches = new int[Math.min(limit, rankedCount)];
+        int found = 0;
+        int checks = Math.min(rankedCount, MAX_FUZZY_CHECKS);
+        for (int i = 0; i < checks && found < matches.length; i++) {
+            if (withinEdits(q, keys[ranked[i]], maxEdits)) matches[found++] = ranked[i];
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    /**
+     * Adds one to {@link #gramHits} for every document in the posting lists of the first
+     * {@code gramCount} grams of {@link #gramBuffer}, skipping lists longer than {@code maxLength}.
+     * Documents seen for the first time are collected into {@link #candidates}.
+     * @return The number of candidates.
+     */
+    private int countHits(int gramCount, int maxLength) {
+        int touched = 0;
+        for (int g = 0; g < gramCount; g++) {
+            int list = listsByGram.get(gramBuffer[g]);
+            if (list == LongIntMap.MISSING || postingLengths[list] > maxLength) continue;
+            int[] docs = postings[list];
+            for (int i = 0, n = postingLengths[list]; i < n; i++) {
+                if (gramHits[docs[i]]++ == 0) {
+                    if (touched == candidates.length) candidates = Arrays.copyOf(candidates, touched * 2);
+                    candidates[touched++] = docs[i];
+                }
+            }
+        }
+        return touched;
+    }
+
+    /**
+     * Approximate substring match: is there a substring of {@code text} within {@code maxEdits}
+     * edits of {@code pattern}? Standard edit distance where the match may start and end
+     * anywhere in the text (Sellers' algorithm), computed one column at a time in a reused row.
+     */
+    private boolean withinEdits(String pattern, String text, int maxEdits) {
+        int m = pattern.length();
+        if (editRow.length <= m) editRow = new int[m + 1];
+        int[] row = editRow;
+        for (int i = 0; i <= m; i++) row[i] = i;
+
+        for (int j = 0; j < text.length(); j++) {
+            char c = text.charAt(j);
+            int diagonal = row[0]; // Free start: the match may begin at any text position
+            row[0] = 0;
+            for (int i = 1; i <= m; i++) {
+                int above = row[i];
+                int cost = pattern.charAt(i - 1) == c ? diagonal : diagonal + 1;
+                row[i] = Math.min(cost, Math.min(above, row[i - 1]) + 1);
+                diagonal = above;
+            }
+            if (row[m] <= maxEdits) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Intersects the posting lists of every trigram of the query into {@link #candidates}.
+     * @return The number of candidates.
+     */
+    private int intersectTrigrams(String q) {
+        int gramCount = 0;
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            gramCount = addGram(gramCount, trigramKey(q, i));
+        }
+        int[] lists = new int[gramCount];
+        for (int i = 0; i < gramCount; i++) {
+            lists[i] = listsByGram.get(gramBuffer[i]);
+            if (lists[i] == LongIntMap.MISSING) return 0;
+        }
+        // Start from the shortest list so every later intersection stays small
+        Integer[] order = new Integer[gramCount];
+        for (int i = 0; i < gramCount; i++) order[i] = lists[i];
+        Arrays.sort(order, (x, y) -> Integer.compare(postingLengths[x], postingLengths[y]));
+
+        int first = order[0];
+        int count = postingLengths[first];
+        if (candidates.length < count) candidates = new int[count];
+        System.arraycopy(postings[first], 0, candidates, 0, count);
+        for (int i = 1; i < gramCount && count > 0; i++) {
+            int list = order[i];
+            count = PostingLists.intersect(candidates, count, postings[list], postingLengths[list], candidates);
+        }
+        return count;
+    }
+
+    /**
+     * Collects the distinct grams of a key into {@link #gramBuffer}: the trigrams of each field
+     * and the 1 and 2 character prefixes of each word.
+     * @return The number of grams.
+     */
+    private int collectGrams(String key) {
+        int count = 0;
+        int fieldStart = 0;
+        int wordStart = -1;
+        for (int i = 0; i <= key.length(); i++) {
+            char c = i < key.length() ? key.charAt(i) : '\n';
+            if (c == '\n') {
+                for (int j = fieldStart; j + 3 <= i; j++) {
+                    count = addGram(count, trigramKey(key, j));
+                }
+                fieldStart = i + 1;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (wordStart < 0) wordStart = i;
+            } else if (wordStart >= 0) {
+                count = addGram(count, prefixKey(key, wordStart, 1));
+                if (i - wordStart >= 2) count = addGram(count, prefixKey(key, wordStart, 2));
+                wordStart = -1;
+            }
+        }
+        // Posting lists must see each doc once, so drop repeated grams
+        Arrays.sort(gramBuffer, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || gramBuffer[unique - 1] != gramBuffer[i]) gramBuffer[unique++] = gramBuffer[i];
+        }
+        return unique;
+    }
+
+    private int addGram(int count, long gram) {
+        if (count == gramBuffer.length) gramBuffer = Arrays.copyOf(gramBuffer, count * 2);
+        gramBuffer[count] = gram;
+        return count + 1;
+    }
+
+    private int newList(long gram) {
+        if (listCount == postings.length) {
+            postings = Arrays.copyOf(postings, listCount * 2);
+            postingLengths = Arrays.copyOf(postingLengths, listCount * 2);
+        }
+        postings[listCount] = new int[4];
+        postingLengths[listCount] = 0;
+        listsByGram.put(gram, listCount);
+        return listCount++;
+    }
+
+    private static long trigramKey(String s, int at) {
+        return ((long) s.charAt(at) << 32) | ((long) s.charAt(at + 1) << 16) | s.charAt(at + 2);
+    }
+
+    private static long prefixKey(String s, int at, int length) {
+        long key = PREFIX_KEY | ((long) length << 48) | s.charAt(at);
+        return length == 2 ? key | ((long) s.charAt(at + 1) << 16) : key;
+    }
+}
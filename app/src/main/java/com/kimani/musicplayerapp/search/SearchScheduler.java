@@ -0,0 +1,117 @@
+package com.kimani.musicplayerapp.search;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.kimani.musicplayerapp.models.TrackInfo;
+
+import java.util.List;
+
+/**
+ * SearchScheduler turns keystrokes into searches. Queries are debounced, so a burst of typing
+ * starts one search; every search gets a sequence number, and results that arrive for an older
+ * sequence are dropped, so a slow response can never overwrite newer results.
+ *
+ * Local and remote searches start together. Local results are delivered as soon as they are
+ * ready, already ranked; remote results are delivered together with them once both are in.
+ * Use from the main thread only.
+ */
+public class SearchScheduler {
+
+    /** Debounce used by {@link #SearchScheduler(LocalSearchEngine, RemoteSongSearch, Callback)}. */
+    public static final long DEFAULT_DEBOUNCE_MS = 150;
+
+    /**
+     * Receives the results of the latest query on the main thread.
+     */
+    public interface Callback {
+        /**
+         * @param local  The best local matches; merge online results with
+         *               {@link ResultRanker#results(List)}.
+         * @param remote Online matches, or null while they are still loading.
+         */
+        void onResults(String query, ResultRanker local, List<TrackInfo> remote);
+    }
+
+    private final LocalSearchEngine local;
+    private final RemoteSongSearch remote;
+    private final Callback callback;
+    private final long debounceMs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private long sequence = 0;  // Sequence of the newest query; older results are stale
+    private Runnable pending;   // Debounced query not started yet
+
+    // Partial results of the current sequence
+    private ResultRanker localRanking;
+    private List<TrackInfo> remoteTracks;
+
+    public SearchScheduler(LocalSearchEngine local, RemoteSongSearch remote, Callback callback) {
+        this(local, remote, callback, DEFAULT_DEBOUNCE_MS);
+    }
+
+    public SearchScheduler(LocalSearchEngine local, RemoteSongSearch remote, Callback callback, long debounceMs) {
+        this.local = local;
+        this.remote = remote;
+        this.callback = callback;
+        this.debounceMs = debounceMs;
+    }
+
+    /**
+     * Schedules a search after the debounce delay, replacing any query not started yet.
+     */
+    public void submit(String query) {
+        schedule(query, debounceMs);
+    }
+
+    /**
+     * Starts a search right away, e.g. when the user presses the search key.
+     */
+    public void submitNow(String query) {
+        schedule(query, 0);
+    }
+
+    /**
+     * Drops the pending query and any results still on their way.
+     */
+    public void cancel() {
+        if (pending != null) {
+            handler.removeCallbacks(pending);
+            pending = null;
+        }
+        sequence++;
+    }
+
+    private void schedule(String query, long delayMs) {
+        cancel();
+        long seq = sequence;
+        pending = () -> {
+            pending = null;
+            start(query, seq);
+        };
+        if (delayMs > 0) {
+            handler.postDelayed(pending, delayMs);
+        } else {
+            pending.run();
+        }
+    }
+
+    private void start(String query, long seq) {
+        localRanking = null;
+        remoteTracks = null;
+
+        local.searchAsync(query, ResultRanker.DEFAULT_LIMIT, ranking -> {
+            if (seq != sequence) return; // Stale
+            localRanking = ranking;
+            callback.onResults(query, ranking, remoteTracks);
+        });
+        // Firestore tasks cannot be cancelled; a stale response is simply ignored
+        remote.search(query, tracks -> {
+            if (seq != sequence) return;
+            remoteTracks = tracks;
+            if (localRanking != null) {
+                callback.onResults(query, localRanking, tracks);
+            }
+        });
+    }
+}
@@ -0,0 +1,329 @@
+package com.kimani.musicplayerapp.search;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import com.kimani.musicplayerapp.library.LibraryRepository;
+import com.kimani.musicplayerapp.library.TextNormalizer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TrackSearchDatabase mirrors the title, artist, album and folder of every local track into a
+ * SQLite full-text (FTS4) table, so very large libraries can be searched without holding an
+ * in-memory index, and album and folder names become searchable too.
+ *
+ * The mirror is kept on disk across launches and synced incrementally: on Android 11+ only rows
+ * whose MediaStore generation is newer than the last sync are rewritten (DATE_MODIFIED before
+ * that), and deleted tracks are found by diffing ids. A new MediaStore version (its database was
+ * rebuilt) triggers a full rebuild. Syncs run on their own thread; queries should be run on a
+ * background thread and may overlap a sync (write-ahead logging).
+ *
+ * Results are ranked from FTS matchinfo: each term hit counts by the weight of its column
+ * (title over artist over album over folder) and by how rare the term is in the library.
+ */
+public class TrackSearchDatabase extends SQLiteOpenHelper {
+
+    private static final String TAG = "TrackSearchDatabase";
+    private static final String DATABASE_NAME = "track_search.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_TRACKS = "tracks";
+    private static final String TABLE_SYNC_STATE = "sync_state";
+
+    // Column weights for ranking, in table column order
+    private static final double[] COLUMN_WEIGHTS = {8, 4, 2, 1};
+
+    private static final Uri AUDIO_URI = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+    private static final String MUSIC_SELECTION = LibraryRepository.MUSIC_SELECTION;
+    private static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.ALBUM,
+            MediaStore.Audio.Media.DATA
+    };
+
+    private static TrackSearchDatabase instance;
+
+    private final Context appContext;
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+    private volatile boolean ready; // True once the mirror holds a complete sync
+
+    private TrackSearchDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        appContext = context;
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * @return The shared mirror. Opening the database is deferred to the first sync or query.
+     */
+    public static synchronized TrackSearchDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new TrackSearchDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // unicode61 folds case and strips diacritics, matching TextNormalizer for most text
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_TRACKS + " USING fts4("
+                + "title, artist, album, folder, tokenize=unicode61 \"remove_diacritics=1\")");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                + "id INTEGER PRIMARY KEY CHECK (id = 0), "
+                + "media_store_version TEXT, generation INTEGER, sync_seconds INTEGER)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // A mirror can always be rebuilt from MediaStore
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRACKS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+        onCreate(db);
+    }
+
+    // =====================================================================================
+    // SYNC
+    // =====================================================================================
+
+    /**
+     * Brings the mirror up to date with MediaStore on the sync thread. Calls made while a sync
+     * is queued are cheap: an unchanged generation returns right away.
+     */
+    public void syncAsync() {
+        syncExecutor.execute(() -> {
+            try {
+                sync();
+            } catch (SQLiteException | SecurityException e) {
+                Log.e(TAG, "Search mirror sync failed", e);
+            }
+        });
+    }
+
+    /**
+     * @return True if the mirror has completed a sync, now or in an earlier session.
+     */
+    public boolean isReady() {
+        if (!ready) {
+            try (Cursor cursor = getReadableDatabase().rawQuery(
+                    "SELECT 1 FROM " + TABLE_SYNC_STATE + " WHERE id = 0", null)) {
+                ready = cursor.moveToFirst();
+            } catch (SQLiteException e) {
+                return false;
+            }
+        }
+        return ready;
+    }
+
+    private void sync() {
+        SQLiteDatabase db = getWritableDatabase();
+        String version = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? MediaStore.getVersion(appContext) : "";
+        long generation = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? MediaStore.getGeneration(appContext, MediaStore.VOLUME_EXTERNAL) : -1;
+        long now = System.currentTimeMillis() / 1000;
+
+        String storedVersion = null;
+        long storedGeneration = -1;
+        long storedSeconds = 0;
+        try (Cursor cursor = db.rawQuery("SELECT media_store_version, generation, sync_seconds FROM "
+                + TABLE_SYNC_STATE + " WHERE id = 0", null)) {
+            if (cursor.moveToFirst()) {
+                storedVersion = cursor.getString(0);
+                storedGeneration = cursor.getLong(1);
+                storedSeconds = cursor.getLong(2);
+            }
+        }
+        boolean rebuild = !version.equals(storedVersion);
+        if (!rebuild && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && generation == storedGeneration) {
+            return; // Nothing changed since the last sync
+        }
+
+        String selection = MUSIC_SELECTION;
+        String[] args = null;
+        if (!rebuild) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                selection += " AND " + MediaStore.Audio.Media.GENERATION_MODIFIED + ">?";
+                args = new String[]{String.valueOf(storedGeneration)};
+            } else {
+                selection += " AND " + MediaStore.Audio.Media.DATE_MODIFIED + ">=?";
+                args = new String[]{String.valueOf(storedSeconds)};
+            }
+        }
+
+        ContentResolver resolver = appContext.getContentResolver();
+        db.beginTransaction();
+        try {
+            if (rebuild) db.delete(TABLE_TRACKS, null, null);
+            int written = 0;
+            try (Cursor cursor = resolver.query(AUDIO_URI, PROJECTION, selection, args, null)) {
+                ContentValues values = new ContentValues();
+                while (cursor != null && cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+                    if (!rebuild) db.delete(TABLE_TRACKS, "docid=?", new String[]{String.valueOf(id)});
+                    values.put("docid", id);
+                    values.put("title", cursor.getString(1));
+                    values.put("artist", cursor.getString(2));
+                    values.put("album", cursor.getString(3));
+                    values.put("folder", folderOf(cursor.getString(4)));
+                    db.insert(TABLE_TRACKS, null, values);
+                    written++;
+                }
+            }
+            int removed = rebuild ? 0 : removeMissing(db, resolver);
+
+            ContentValues state = new ContentValues();
+            state.put("id", 0);
+            state.put("media_store_version", version);
+            state.put("generation", generation);
+            state.put("sync_seconds", now);
+            db.insertWithOnConflict(TABLE_SYNC_STATE, null, state, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+            Log.d(TAG, (rebuild ? "Rebuilt" : "Synced") + " search mirror: " + written
+                    + " written, " + removed + " removed");
+        } finally {
+            db.endTransaction();
+        }
+        ready = true;
+    }
+
+    /**
+     * Deletes mirrored tracks that are no longer in MediaStore, looking each mirrored id up in
+     * the sorted MediaStore ids.
+     * @return The number of rows deleted.
+     */
+    private static int removeMissing(SQLiteDatabase db, ContentResolver resolver) {
+        long[] present = queryIds(resolver);
+        List<Long> missing = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT docid FROM " + TABLE_TRACKS, null)) {
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                if (Arrays.binarySearch(present, id) < 0) missing.add(id);
+            }
+        }
+        int removed = 0;
+        for (long id : missing) {
+            removed += db.delete(TABLE_TRACKS, "docid=?", new String[]{String.valueOf(id)});
+        }
+        return removed;
+    }
+
+    private static long[] queryIds(ContentResolver resolver) {
+        try (Cursor cursor = resolver.query(AUDIO_URI, new String[]{MediaStore.Audio.Media._ID},
+                MUSIC_SELECTION, null, null)) {
+            long[] ids = new long[cursor != null ? cursor.getCount() : 0];
+            int n = 0;
+            while (cursor != null && cursor.moveToNext() && n < ids.length) {
+                ids[n++] = cursor.getLong(0);
+            }
+            Arrays.sort(ids, 0, n);
+            return n < ids.length ? Arrays.copyOf(ids, n) : ids;
+        }
+    }
+
+    private static String folderOf(String path) {
+        if (path == null) return null;
+        int end = path.lastIndexOf('/');
+        if (end <= 0) return null;
+        return path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    // =====================================================================================
+    // QUERIES
+    // =====================================================================================
+
+    /**
+     * Finds tracks with a word starting with each word of the query, in any of the columns.
+     * Blocks on disk I/O: call from a background thread.
+     * @param limit Maximum number of ids to return.
+     * @return MediaStore ids of the best matches, best first.
+     */
+    public long[] search(String query, int limit) {
+        String match = matchExpression(query);
+        if (match.isEmpty() || limit <= 0) return new long[0];
+
+        // Keep the best `limit` rows in a min-heap of (score, id)
+        PriorityQueue<double[]> best = new PriorityQueue<>(limit, (a, b) -> Double.compare(a[0], b[0]));
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT docid, matchinfo(" + TABLE_TRACKS
+                + ", 'pcnx') FROM " + TABLE_TRACKS + " WHERE " + TABLE_TRACKS + " MATCH ?", new String[]{match})) {
+            while (cursor.moveToNext()) {
+                double score = score(cursor.getBlob(1));
+                if (best.size() < limit) {
+                    best.add(new double[]{score, cursor.getLong(0)});
+                } else if (score > best.peek()[0]) {
+                    best.poll();
+                    best.add(new double[]{score, cursor.getLong(0)});
+                }
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Search mirror query failed", e);
+        }
+        long[] ids = new long[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) ids[i] = (long) best.poll()[1];
+        return ids;
+    }
+
+    /**
+     * Turns a query into an FTS expression of prefix terms ("sigur ro" becomes "sigur* ro*"),
+     * keeping only letters and digits so user input cannot form FTS operators.
+     */
+    static String matchExpression(String query) {
+        String q = TextNormalizer.normalize(query);
+        StringBuilder match = new StringBuilder(q.length() + 8);
+        boolean inWord = false;
+        for (int i = 0; i < q.length(); i++) {
+            char c = q.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord && match.length() > 0) match.append(' ');
+                match.append(c);
+                inWord = true;
+            } else if (inWord) {
+                match.append('*');
+                inWord = false;
+            }
+        }
+        if (inWord) match.append('*');
+        return match.toString();
+    }
+
+    /**
+     * Scores a row from its matchinfo('pcnx') blob: phrase count p, column count c, row count n,
+     * then for each phrase and column (hits in this row, hits in all rows, rows with a hit).
+     */
+    private static double score(byte[] matchinfo) {
+        ByteBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+        int phrases = info.getInt(0);
+        int columns = info.getInt(4);
+        int rows = info.getInt(8);
+        double score = 0;
+        for (int p = 0; p < phrases; p++) {
+            for (int c = 0; c < columns && c < COLUMN_WEIGHTS.length; c++) {
+                int at = 12 + 12 * (p * columns + c);
+                int hits = info.getInt(at);
+                if (hits == 0) continue;
+                int rowsWithHit = info.getInt(at + 8);
+                double rarity = Math.log(1.0 + (double) rows / Math.max(1, rowsWithHit));
+                score += COLUMN_WEIGHTS[c] * hits * rarity;
+            }
+        }
+        return score;
+    }
+}
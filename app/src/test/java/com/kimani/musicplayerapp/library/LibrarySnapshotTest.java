@@ -0,0 +1,60 @@
+package com.kimani.musicplayerapp.library;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trip tests for the binary library snapshot format.
+ */
+public class LibrarySnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeThenRead_restoresEveryColumn() throws Exception {
+        File file = new File(folder.getRoot(), "library.snapshot");
+        MutableSongStore store = new MutableSongStore();
+        store.append(7, "Água de Beber", "Astrud", "/music/a.mp3", 3, 180_000);
+        store.append(2, "Beat It", "Michael", "/music/b.mp3", 4, 258_000);
+        store.append(9, null, "Michael", "/music/c.mp3", 4, 0);
+        SongStore songs = store.snapshot();
+
+        LibrarySnapshot.write(file, songs, "v1", 42, 1_700_000_000L);
+        LibrarySnapshot snap = LibrarySnapshot.read(file);
+
+        assertNotNull(snap);
+        assertEquals(3, snap.getRowCount());
+        assertEquals("v1", snap.getMediaStoreVersion());
+        assertEquals(42, snap.getGeneration());
+        assertEquals(1_700_000_000L, snap.getSyncSeconds());
+        for (int i = 0; i < songs.size(); i++) {
+            assertEquals(songs.getId(i), snap.getId(i));
+            assertEquals(songs.getAlbumId(i), snap.getAlbumId(i));
+            assertEquals(songs.getDuration(i), snap.getDuration(i));
+            assertEquals(songs.getTitle(i), snap.getTitle(i));
+            assertEquals(songs.getArtist(i), snap.getArtist(i));
+            assertEquals(songs.getSearchKey(i), snap.getSearchKey(i));
+            assertEquals(songs.getPath(i), snap.getPath(i));
+        }
+        // Repeated strings come out of the pool as the same instance
+        assertSame(snap.getArtist(1), snap.getArtist(2));
+    }
+
+    @Test
+    public void read_rejectsGarbageAndDeletesIt() throws Exception {
+        File file = new File(folder.getRoot(), "library.snapshot");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        }
+
+        assertNull(LibrarySnapshot.read(file));
+        assertFalse(file.exists());
+    }
+}
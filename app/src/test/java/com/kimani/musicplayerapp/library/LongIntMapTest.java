@@ -0,0 +1,67 @@
+package com.kimani.musicplayerapp.library;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the open-addressing long-to-int map, checked against a HashMap.
+ */
+public class LongIntMapTest {
+
+    @Test
+    public void putGetRemove_basics() {
+        LongIntMap map = new LongIntMap();
+        assertEquals(LongIntMap.MISSING, map.get(42));
+        map.put(42, 1);
+        map.put(-7, 2);
+        map.put(42, 3);  // Replaces
+        assertEquals(2, map.size());
+        assertEquals(3, map.get(42));
+        assertEquals(2, map.get(-7));
+        assertTrue(map.containsKey(-7));
+        assertEquals(3, map.remove(42));
+        assertEquals(LongIntMap.MISSING, map.remove(42));
+        assertEquals(1, map.size());
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(-7));
+    }
+
+    @Test
+    public void randomOperations_matchHashMap() {
+        // Few distinct keys in a small map, so probe chains collide and wrap and removals
+        // have to shift entries back
+        Random random = new Random(5);
+        LongIntMap map = new LongIntMap(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int step = 0; step < 20_000; step++) {
+            long key = random.nextInt(200) * 1024L;
+            switch (random.nextInt(3)) {
+                case 0: {
+                    int value = random.nextInt(1000);
+                    map.put(key, value);
+                    expected.put(key, value);
+                    break;
+                }
+                case 1: {
+                    Integer removed = expected.remove(key);
+                    assertEquals(removed == null ? LongIntMap.MISSING : removed, map.remove(key));
+                    break;
+                }
+                default: {
+                    Integer value = expected.get(key);
+                    assertEquals(value == null ? LongIntMap.MISSING : value, map.get(key));
+                }
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+}
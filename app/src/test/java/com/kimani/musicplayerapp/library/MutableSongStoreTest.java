@@ -0,0 +1,100 @@
+package com.kimani.musicplayerapp.library;
+
+import com.kimani.musicplayerapp.Song;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the columnar library store and the views it hands out.
+ */
+public class MutableSongStoreTest {
+
+    @Test
+    public void insertAndRemove_keepTitleOrderAndIdIndex() {
+        MutableSongStore store = new MutableSongStore();
+        List<Song> expected = new ArrayList<>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 500; i++) {
+            Song song = new Song(i, "Title " + random.nextInt(100), "Artist " + (i % 7), "/p/" + i, i % 5, i);
+            store.insertSorted(song);
+            expected.add(song);
+        }
+        for (int i = 0; i < 500; i += 3) {
+            store.removeRow(store.rowOf(i));
+        }
+        expected.removeIf(s -> s.getId() % 3 == 0);
+        Collections.sort(expected, SongOrder.BY_TITLE);
+
+        SongStore view = store.snapshot();
+        assertEquals(expected.size(), view.size());
+        for (int row = 0; row < view.size(); row++) {
+            assertEquals(expected.get(row).getId(), view.getId(row));
+            assertEquals(expected.get(row).getTitle(), view.getTitle(row));
+            assertEquals(expected.get(row).getArtist(), view.getArtist(row));
+            assertEquals(TextNormalizer.searchKey(view.getTitle(row), view.getArtist(row)), view.getSearchKey(row));
+            assertEquals(row, store.rowOf(view.getId(row)));
+        }
+        assertEquals(LongIntMap.MISSING, store.rowOf(3));
+    }
+
+    @Test
+    public void snapshot_isNotAffectedByLaterChanges() {
+        MutableSongStore store = new MutableSongStore();
+        store.append(1, "A", "X", "/a", 0, 0);
+        store.append(2, "C", "X", "/c", 0, 0);
+        SongStore before = store.snapshot();
+
+        store.append(3, "D", "Y", "/d", 0, 0);
+        store.insertSorted(new Song(4, "B", "Z", "/b", 0, 0));
+        store.removeRow(store.rowOf(1));
+
+        assertEquals(2, before.size());
+        assertEquals("A", before.getTitle(0));
+        assertEquals("C", before.getTitle(1));
+        SongStore after = store.snapshot();
+        assertEquals(3, after.size());
+        assertEquals("B", after.getTitle(0));
+        assertEquals("Z", after.getArtist(0));
+    }
+
+    @Test
+    public void append_skipsDuplicateIds() {
+        MutableSongStore store = new MutableSongStore();
+        assertTrue(store.append(1, "A", null, "/a", 0, 0));
+        assertFalse(store.append(1, "A", null, "/a", 0, 0));
+        assertEquals(1, store.size());
+        assertNull(store.snapshot().getArtist(0));
+    }
+
+    @Test
+    public void appendMerged_keepsTitleOrderAcrossParts() {
+        MutableSongStore internal = new MutableSongStore();
+        internal.append(1, "Alpha", "X", "/a", 0, 0);
+        internal.append(2, "Delta", "X", "/d", 0, 0);
+        MutableSongStore sdCard = new MutableSongStore();
+        sdCard.append(3, "Bravo", "Y", "/b", 0, 0);
+        sdCard.append(4, "Charlie", "Y", "/c", 0, 0);
+        sdCard.append(5, "Echo", "Y", "/e", 0, 0);
+
+        MutableSongStore merged = new MutableSongStore();
+        merged.appendMerged(Arrays.asList(internal.snapshot(), sdCard.snapshot(), SongStore.EMPTY));
+
+        SongStore view = merged.snapshot();
+        assertEquals(5, view.size());
+        assertTrue(merged.isSorted());
+        long[] expectedIds = {1, 3, 4, 2, 5};
+        for (int row = 0; row < expectedIds.length; row++) {
+            assertEquals(expectedIds[row], view.getId(row));
+            assertEquals(row, merged.rowOf(expectedIds[row]));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.kimani.musicplayerapp.library;
+
+import com.kimani.musicplayerapp.Song;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for matching paths from other devices against the library.
+ */
+public class PathMatcherTest {
+
+    @Test
+    public void rowOf_fallsBackToFolderAndFileName() {
+        MutableSongStore store = new MutableSongStore();
+        store.insertSorted(new Song(1, "Alpha", "A", "/storage/emulated/0/Music/Rock/alpha.mp3", 1, 1));
+        store.insertSorted(new Song(2, "Bravo", "B", "/storage/emulated/0/Music/Rock/Bravo.mp3", 1, 1));
+        store.insertSorted(new Song(3, "Intro", "C", "/storage/emulated/0/Music/Live/intro.mp3", 1, 1));
+        store.insertSorted(new Song(4, "Intro", "D", "/storage/1234-ABCD/Live/intro.mp3", 1, 1));
+        SongStore songs = store.snapshot();
+        PathMatcher matcher = new PathMatcher(songs);
+
+        assertEquals(1, songs.getId(matcher.rowOf("/storage/emulated/0/Music/Rock/alpha.mp3")));
+        assertEquals(1, songs.getId(matcher.rowOf("/sdcard/Music/Rock/alpha.mp3")));
+        assertEquals(2, songs.getId(matcher.rowOf("C:\\Users\\me\\Music\\rock\\bravo.MP3")));
+        assertEquals(-1, matcher.rowOf("/sdcard/Live/intro.mp3")); // Two tracks match
+        assertEquals(-1, matcher.rowOf("/sdcard/Music/Jazz/alpha.mp3"));
+        assertEquals(-1, matcher.rowOf("/sdcard/Music/"));
+    }
+}
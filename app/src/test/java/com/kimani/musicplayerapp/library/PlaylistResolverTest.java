@@ -0,0 +1,35 @@
+package com.kimani.musicplayerapp.library;
+
+import com.kimani.musicplayerapp.Song;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for joining stored playlist members against the library.
+ */
+public class PlaylistResolverTest {
+
+    @Test
+    public void join_resolvesPathsAndIdsInLibraryOrder() {
+        MutableSongStore store = new MutableSongStore();
+        store.insertSorted(new Song(7, "Charlie", "A", "/m/c.mp3", 1, 1));
+        store.insertSorted(new Song(3, "Alpha", "A", "/m/a.mp3", 1, 1));
+        store.insertSorted(new Song(5, "Bravo", "B", "/m/b.mp3", 1, 1));
+        SongStore songs = store.snapshot();
+
+        List<String> unresolved = new ArrayList<>();
+        int[] rows = PlaylistResolver.join(songs,
+                Arrays.asList("/m/c.mp3", "3", "/m/gone.mp3", "7", "42"), unresolved);
+
+        assertEquals(2, rows.length);
+        assertEquals(3, songs.getId(rows[0]));
+        assertEquals(7, songs.getId(rows[1]));
+        assertEquals(Arrays.asList("/m/gone.mp3", "42"), unresolved);
+    }
+}
@@ -0,0 +1,20 @@
+package com.kimani.musicplayerapp.library;
+
+import com.kimani.musicplayerapp.Song;
+
+/**
+ * Builds library views for tests outside this package.
+ */
+public final class TestSongs {
+
+    private TestSongs() {}
+
+    /**
+     * @return A view of these songs, in title order.
+     */
+    public static SongStore storeOf(Song... songs) {
+        MutableSongStore store = new MutableSongStore();
+        for (Song song : songs) store.insertSorted(song);
+        return store.snapshot();
+    }
+}
@@ -0,0 +1,45 @@
+package com.kimani.musicplayerapp.library;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the search normalization of titles, artists and queries.
+ */
+public class TextNormalizerTest {
+
+    @Test
+    public void normalize_foldsCaseAccentsAndCompatibilityForms() {
+        assertEquals("beyonce", TextNormalizer.normalize("Beyoncé"));
+        assertEquals("beyonce", TextNormalizer.normalize("BEYONCE"));
+        assertEquals("beyonce", TextNormalizer.normalize("Ｂｅｙｏｎｃｅ")); // Full-width
+        assertEquals("sigur ros", TextNormalizer.normalize("Sigur Rós"));
+        assertEquals("motorhead", TextNormalizer.normalize("Motörhead"));
+        assertEquals("fire", TextNormalizer.normalize("ﬁre")); // "fi" ligature
+        assertEquals("mo", TextNormalizer.normalize("MØ"));
+        assertEquals("", TextNormalizer.normalize(null));
+    }
+
+    @Test
+    public void normalize_ignoresTurkishLocale() {
+        Locale saved = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals("istanbul", TextNormalizer.normalize("ISTANBUL"));
+            assertEquals("istanbul", TextNormalizer.normalize("İstanbul")); // Dotted capital I
+            assertEquals("istanbul", TextNormalizer.normalize("ıstanbul")); // Dotless small i
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+    @Test
+    public void normalize_returnsPlainAsciiAsIs() {
+        String plain = "night drive";
+        assertSame(plain, TextNormalizer.normalize(plain));
+        assertEquals("love\nqueen", TextNormalizer.searchKey(" Love ", "QUEEN"));
+    }
+}
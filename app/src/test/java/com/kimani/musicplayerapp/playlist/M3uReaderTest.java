@@ -0,0 +1,64 @@
+package com.kimani.musicplayerapp.playlist;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for reading M3U playlists, including ones written by M3uWriter.
+ */
+public class M3uReaderTest {
+
+    @Test
+    public void reader_parsesPlainAndExtendedEntries() throws Exception {
+        String playlist = "\uFEFF#EXTM3U\r\n"
+                + "#EXTINF:215 tvg-id=\"x\",Artist - Title, Part 2\r\n"
+                + "/music/a.mp3\r\n"
+                + "\r\n"
+                + "# a comment\n"
+                + "Sub\\b.mp3\n"
+                + "file:///storage/emulated/0/My%20Music/c+d%C3%A9.flac\n"
+                + "#EXTINF:-1,Radio\n"
+                + "http://example.com/stream\n";
+        M3uReader reader = new M3uReader(new StringReader(playlist), "/base");
+
+        M3uReader.Entry a = reader.next();
+        assertEquals("/music/a.mp3", a.location);
+        assertEquals("Artist - Title, Part 2", a.title);
+        assertEquals(215, a.durationSeconds);
+
+        M3uReader.Entry b = reader.next();
+        assertEquals("/base/Sub/b.mp3", b.location);
+        assertNull(b.title);
+        assertEquals(-1, b.durationSeconds);
+
+        assertEquals("/storage/emulated/0/My Music/c+d\u00E9.flac", reader.next().location);
+
+        M3uReader.Entry radio = reader.next();
+        assertEquals("http://example.com/stream", radio.location);
+        assertEquals(-1, radio.durationSeconds);
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void writtenPlaylist_readsBack() throws Exception {
+        StringWriter out = new StringWriter();
+        try (M3uWriter writer = new M3uWriter(out)) {
+            writer.writeHeader();
+            writer.writeEntry("/music/a.mp3", "Title", "Artist", 215_500);
+            writer.writeEntry("/music/b.mp3", "Two\nLines", null, 0);
+            writer.writeEntry("/music/c.mp3", null, null, 0);
+        }
+        assertEquals("#EXTM3U\n#EXTINF:215,Artist - Title\n/music/a.mp3\n"
+                + "#EXTINF:-1,Two Lines\n/music/b.mp3\n/music/c.mp3\n", out.toString());
+
+        M3uReader reader = new M3uReader(new StringReader(out.toString()), null);
+        assertEquals("Artist - Title", reader.next().title);
+        assertEquals("/music/b.mp3", reader.next().location);
+        assertEquals("/music/c.mp3", reader.next().location);
+        assertNull(reader.next());
+    }
+}
@@ -0,0 +1,90 @@
+package com.kimani.musicplayerapp.playlist;
+
+import com.kimani.musicplayerapp.Song;
+import com.kimani.musicplayerapp.library.PathMatcher;
+import com.kimani.musicplayerapp.library.SongStore;
+import com.kimani.musicplayerapp.library.TestSongs;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips playlists through M3uWriter and M3uReader, exporting members the way
+ * PlaylistStore does and importing the file back through the library's path index.
+ */
+public class M3uWriterTest {
+
+    private static final String MUSIC = "/storage/emulated/0/Music";
+
+    private final SongStore songs = TestSongs.storeOf(
+            new Song(1, "Alpha, Part 2", "Ann\r\nBand", MUSIC + "/Rock/alpha.mp3", 1, 215_500),
+            new Song(2, "#1 Hit", "<unknown>", MUSIC + "/#1 Hit.mp3", 1, 0),
+            new Song(3, "Gamma", "C", MUSIC + "/Jazz/gamma.mp3", 1, 61_000),
+            new Song(4, "Delta", "D", MUSIC + "/Jazz/Live/delta.mp3", 1, 90_000));
+
+    @Test
+    public void exportedPlaylist_importsBackThroughTheLibrary() throws Exception {
+        List<String> members = Arrays.asList(
+                "1",                           // Favorites entry, by id
+                MUSIC + "/#1 Hit.mp3",         // Unknown artist
+                "#1 Hit.mp3",                  // Relative path that reads like a directive
+                "99",                          // Id no longer in the library
+                "/sdcard/Old/gone.mp3",        // Path no longer in the library
+                MUSIC + "/Jazz/gamma.mp3",
+                "Jazz/Live/delta.mp3");        // Relative path, not in the library as stored
+
+        StringWriter out = new StringWriter();
+        List<String> unresolved = new ArrayList<>();
+        try (M3uWriter writer = new M3uWriter(out)) {
+            writer.writeHeader();
+            for (String member : members) {
+                if (!writer.writeMember(songs, member)) unresolved.add(member);
+            }
+        }
+        assertEquals(Arrays.asList("99"), unresolved);
+        assertEquals("#EXTM3U\n"
+                + "#EXTINF:215,Ann  Band - Alpha, Part 2\n" + MUSIC + "/Rock/alpha.mp3\n"
+                + "#EXTINF:-1,#1 Hit\n" + MUSIC + "/#1 Hit.mp3\n"
+                + "./#1 Hit.mp3\n"
+                + "/sdcard/Old/gone.mp3\n"
+                + "#EXTINF:61,C - Gamma\n" + MUSIC + "/Jazz/gamma.mp3\n"
+                + "Jazz/Live/delta.mp3\n", out.toString());
+
+        // Import on a device where the playlist sits in the music folder
+        M3uReader reader = new M3uReader(new StringReader(out.toString()), MUSIC);
+        PathMatcher matcher = new PathMatcher(songs);
+        List<String> titles = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (M3uReader.Entry entry = reader.next(); entry != null; entry = reader.next()) {
+            int row = matcher.rowOf(entry.location);
+            if (row < 0) {
+                missing.add(entry.location);
+            } else {
+                titles.add(songs.getTitle(row));
+            }
+        }
+        assertEquals(Arrays.asList("Alpha, Part 2", "#1 Hit", "#1 Hit", "Gamma", "Delta"), titles);
+        assertEquals(Arrays.asList("/sdcard/Old/gone.mp3"), missing);
+    }
+
+    @Test
+    public void extinfText_staysOnOneLine() throws Exception {
+        StringWriter out = new StringWriter();
+        try (M3uWriter writer = new M3uWriter(out)) {
+            writer.writeEntry("/music/a.mp3", "Line\none\rtwo", "Art,ist", 1_999);
+        }
+        M3uReader reader = new M3uReader(new StringReader(out.toString()), null);
+        M3uReader.Entry entry = reader.next();
+        assertEquals("Art,ist - Line one two", entry.title);
+        assertEquals(1, entry.durationSeconds);
+        assertEquals("/music/a.mp3", entry.location);
+        assertNull(reader.next());
+    }
+}
@@ -0,0 +1,37 @@
+package com.kimani.musicplayerapp.playlist;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the gapped keys playlist entries are ordered by.
+ */
+public class SortKeysTest {
+
+    @Test
+    public void between_placesKeysStrictlyBetweenNeighbours() {
+        assertEquals(SortKeys.at(0), SortKeys.between(SortKeys.NONE, SortKeys.NONE));
+        assertEquals(SortKeys.at(0) - SortKeys.GAP, SortKeys.between(SortKeys.NONE, SortKeys.at(0)));
+        assertEquals(SortKeys.at(3), SortKeys.between(SortKeys.at(2), SortKeys.NONE));
+
+        long key = SortKeys.between(SortKeys.at(0), SortKeys.at(1));
+        assertTrue(key > SortKeys.at(0) && key < SortKeys.at(1));
+        assertEquals(SortKeys.NONE, SortKeys.between(10, 11));
+    }
+
+    @Test
+    public void repeatedMovesIntoOneSpot_becomeCrowdedBeforeRunningOutOfRoom() {
+        long before = SortKeys.at(0);
+        long after = SortKeys.at(1);
+        int moves = 0;
+        while (true) {
+            long key = SortKeys.between(before, after);
+            assertNotEquals(SortKeys.NONE, key);
+            moves++;
+            if (SortKeys.crowded(before, key, after)) break;
+            after = key;
+        }
+        assertTrue("moves before renumbering: " + moves, moves >= 16);
+    }
+}
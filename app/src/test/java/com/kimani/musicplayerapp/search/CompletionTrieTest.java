@@ -0,0 +1,92 @@
+package com.kimani.musicplayerapp.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the weighted completion trie, checked against a sorted scan of every term.
+ */
+public class CompletionTrieTest {
+
+    @Test
+    public void complete_returnsBestWeightedFirst() {
+        CompletionTrie trie = new CompletionTrie.Builder()
+                .add("Bohemian Rhapsody", 5)
+                .add("Born to Run", 9)
+                .add("Bob Marley", 3)
+                .add("The Beatles", 7)
+                .add("BORN TO RUN", 1)   // Same term: keeps the first text and the larger weight
+                .build(3);
+
+        assertEquals(Arrays.asList("Born to Run", "Bohemian Rhapsody", "Bob Marley"), trie.complete("bo", 10));
+        assertEquals(Arrays.asList("Bohemian Rhapsody"), trie.complete("BOHÉ", 10));
+        assertEquals(Arrays.asList("The Beatles"), trie.complete("beat", 10));
+        assertEquals(Arrays.asList("The Beatles"), trie.complete("the b", 10));
+        assertEquals(4, trie.size());
+        assertTrue(trie.complete("x", 10).isEmpty());
+    }
+
+    @Test
+    public void complete_matchesScanAtEveryDepth() {
+        Random random = new Random(3);
+        String[] words = {"love", "lovely", "the", "night", "knight", "fire", "dancing", "queen"};
+        CompletionTrie.Builder builder = new CompletionTrie.Builder();
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            String term = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                    + " " + i;
+            terms.add(term);
+            builder.add(term, 1000 - i); // Earlier terms weigh more
+        }
+        CompletionTrie trie = builder.build(5);
+
+        for (String term : terms) {
+            for (int length = 1; length <= term.length(); length += 3) {
+                String prefix = term.substring(0, length);
+                List<String> expected = new ArrayList<>();
+                for (String candidate : terms) {
+                    boolean matches = candidate.startsWith(prefix)
+                            || (candidate.startsWith("the ") && candidate.startsWith(prefix, 4));
+                    if (matches && expected.size() < 5) expected.add(candidate);
+                }
+                assertEquals(prefix, expected, trie.complete(prefix, 5));
+            }
+        }
+    }
+
+    @Test
+    public void build_storesListsOnlyWhereChainsBranch() {
+        // Library-like terms: titles and artists of one to four words from a vocabulary of
+        // made-up words, the common ones drawn far more often
+        Random random = new Random(7);
+        String[] vocabulary = new String[2000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int c = 2 + random.nextInt(7); c > 0; c--) word.append((char) ('a' + random.nextInt(26)));
+            vocabulary[i] = word.toString();
+        }
+        CompletionTrie.Builder builder = new CompletionTrie.Builder();
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder term = new StringBuilder(i % 10 == 0 ? "The" : "");
+            for (int w = 1 + random.nextInt(4); w > 0; w--) {
+                if (term.length() > 0) term.append(' ');
+                double skew = random.nextDouble();
+                term.append(vocabulary[(int) (skew * skew * skew * vocabulary.length)]);
+            }
+            builder.add(term.toString(), random.nextInt(1000));
+        }
+        int k = 8;
+        CompletionTrie trie = builder.build(k);
+
+        // One full list per node would be nodeCount * k ids; stored lists come to under one per node
+        String stats = trie.nodeCount() + " nodes, " + trie.storedIds() + " ids";
+        assertTrue(stats, trie.storedIds() < trie.nodeCount());
+        assertEquals(k, trie.complete("a", k).size());
+    }
+}
@@ -0,0 +1,72 @@
+package com.kimani.musicplayerapp.search;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for sorted posting list insert, remove and intersect, checked against a TreeSet.
+ */
+public class PostingListsTest {
+
+    @Test
+    public void insert_keepsListSortedAndReportsDuplicates() {
+        int[] list = new int[0];
+        int length = 0;
+        for (int id : new int[]{5, 9, 1, 7, 9, 5, 12}) {
+            list = PostingLists.ensureRoom(list, length);
+            if (PostingLists.insert(list, length, id)) length++;
+        }
+        assertArrayEquals(new int[]{1, 5, 7, 9, 12}, Arrays.copyOf(list, length));
+
+        list = PostingLists.ensureRoom(list, length);
+        assertFalse(PostingLists.insert(list, length, 7));
+        assertArrayEquals(new int[]{1, 5, 7, 9, 12}, Arrays.copyOf(list, length));
+    }
+
+    @Test
+    public void insertAndRemove_matchSortedSet() {
+        Random random = new Random(11);
+        TreeSet<Integer> expected = new TreeSet<>();
+        int[] list = new int[0];
+        int length = 0;
+        for (int step = 0; step < 5000; step++) {
+            int id = random.nextInt(300);
+            if (random.nextInt(3) == 0) {
+                boolean removed = PostingLists.remove(list, length, id);
+                assertEquals(expected.remove(id), removed);
+                if (removed) length--;
+            } else {
+                list = PostingLists.ensureRoom(list, length);
+                boolean inserted = PostingLists.insert(list, length, id);
+                assertEquals(expected.add(id), inserted);
+                if (inserted) length++;
+            }
+            assertEquals(expected.size(), length);
+        }
+        int[] sorted = new int[expected.size()];
+        int i = 0;
+        for (int id : expected) sorted[i++] = id;
+        assertArrayEquals(sorted, Arrays.copyOf(list, length));
+    }
+
+    @Test
+    public void intersect_linearAndGalloping() {
+        int[] evens = new int[500];
+        for (int i = 0; i < evens.length; i++) evens[i] = i * 2;
+        int[] few = {3, 4, 10, 999, 1000};  // Short enough against evens to gallop
+        int[] out = new int[few.length];
+        int n = PostingLists.intersect(few, few.length, evens, evens.length, out);
+        assertArrayEquals(new int[]{4, 10}, Arrays.copyOf(out, n));
+
+        int[] a = {1, 2, 3, 4, 6, 8};
+        int[] b = {2, 4, 5, 8, 9};
+        n = PostingLists.intersect(a, a.length, b, b.length, a); // In place
+        assertArrayEquals(new int[]{2, 4, 8}, Arrays.copyOf(a, n));
+        assertEquals(0, PostingLists.intersect(a, 0, b, b.length, a));
+    }
+}
@@ -0,0 +1,53 @@
+package com.kimani.musicplayerapp.search;
+
+import com.kimani.musicplayerapp.models.TrackInfo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for prefix reuse, expiry and the memory bound of the remote result cache.
+ */
+public class RemoteSearchCacheTest {
+
+    private static TrackInfo track(String title) {
+        return new TrackInfo(title, title, "", "", "");
+    }
+
+    @Test
+    public void completeShorterPrefix_isFilteredInMemory() {
+        RemoteSearchCache cache = new RemoteSearchCache(1000, 100);
+        cache.put("Be", Arrays.asList(track("Beat It"), track("Believer"), track("Beautiful")), true, 0);
+
+        List<TrackInfo> beat = cache.get("Beat", 10);
+        assertEquals(1, beat.size());
+        assertEquals("Beat It", beat.get(0).getTitle());
+        assertEquals(2, cache.get("Bea", 10).size());
+    }
+
+    @Test
+    public void incompleteOrExpiredResults_areNotReused() {
+        RemoteSearchCache cache = new RemoteSearchCache(1000, 100);
+        cache.put("Be", Arrays.asList(track("Beat It")), false, 0);
+        assertNull(cache.get("Bea", 10));
+        assertNotNull(cache.get("Be", 10));
+        assertNull(cache.get("Be", 1000));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntries_areEvictedPastTheBound() {
+        RemoteSearchCache cache = new RemoteSearchCache(1000, 3);
+        cache.put("a", Arrays.asList(track("a1"), track("a2")), true, 0);
+        cache.put("b", Arrays.asList(track("b1")), true, 0);
+        cache.get("a", 1); // Touch "a" so "b" is the eldest
+        cache.put("c", Arrays.asList(track("c1")), true, 0);
+
+        assertNotNull(cache.get("a", 1));
+        assertNull(cache.get("b", 1));
+        assertNotNull(cache.get("c", 1));
+    }
+}
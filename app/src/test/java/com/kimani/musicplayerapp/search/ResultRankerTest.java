@@ -0,0 +1,71 @@
+package com.kimani.musicplayerapp.search;
+
+import com.kimani.musicplayerapp.Song;
+import com.kimani.musicplayerapp.library.SongStore;
+import com.kimani.musicplayerapp.library.TestSongs;
+import com.kimani.musicplayerapp.models.TrackInfo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for deduplication, scoring and the top-k bound of the result ranker.
+ */
+public class ResultRankerTest {
+
+    private static TrackInfo remote(String id, String title, String artist) {
+        return new TrackInfo(id, title, artist, "https://example.com/" + id, "");
+    }
+
+    @Test
+    public void duplicatesAreDroppedAndBetterMatchesRankFirst() {
+        ResultRanker ranker = new ResultRanker("love", key -> 0, 10);
+        ranker.offerRemote(Arrays.asList(
+                remote("1", "Glove Box", "A"),
+                remote("2", "Crazy Love", "B"),
+                remote("3", "Love", "C"),
+                remote("4", "Lovely", "D"),
+                remote("3", "Love", "C")));   // Same result twice
+
+        List<String> titles = new ArrayList<>();
+        for (TrackInfo track : ranker.results()) titles.add(track.getTitle());
+        assertEquals(Arrays.asList("Love", "Lovely", "Crazy Love", "Glove Box"), titles);
+    }
+
+    @Test
+    public void localFilesAreKeptApartAndHideTheSameTrackOnline() {
+        SongStore songs = TestSongs.storeOf(
+                new Song(1, "Love", "C", "/music/love.mp3", 1, 1),
+                new Song(2, "Love", "C", "/music/live/love.mp3", 1, 1));
+        ResultRanker ranker = new ResultRanker("love", key -> 0, 10);
+        ranker.offerLocal(songs, new int[]{0, 1, 1});
+        List<TrackInfo> results = ranker.results(Arrays.asList(
+                remote("x", "love ", "c"),  // Same track as the local files once normalized
+                remote("y", "Lovely", "D")));
+
+        List<String> ids = new ArrayList<>();
+        for (TrackInfo track : results) ids.add(track.getId());
+        assertEquals(Arrays.asList("1", "2", "y"), ids);
+        assertEquals(2, ranker.results().size()); // Merging left the local ranking alone
+    }
+
+    @Test
+    public void playCountsBreakTiesAndOnlyTopKAreKept() {
+        String favourite = ResultRanker.trackKey("Night Drive", "Z");
+        ResultRanker ranker = new ResultRanker("night", key -> key.equals(favourite) ? 40 : 0, 2);
+        ranker.offerRemote(Arrays.asList(
+                remote("1", "Night Call", "X"),
+                remote("2", "Night Moves", "Y"),
+                remote("3", "Night Drive", "Z")));
+
+        List<TrackInfo> results = ranker.results();
+        assertEquals(2, results.size());
+        assertEquals("Night Drive", results.get(0).getTitle());
+        assertEquals("Night Call", results.get(1).getTitle());
+    }
+}
@@ -0,0 +1,101 @@
+package com.kimani.musicplayerapp.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the inverted search index, checked against a plain substring scan.
+ */
+public class SearchIndexTest {
+
+    @Test
+    public void search_matchesSubstringScan() {
+        Random random = new Random(7);
+        String[] words = {"love", "lovely", "glove", "night", "knight", "fire", "the", "dancing", "queen"};
+        List<String> titles = new ArrayList<>();
+        SearchIndex index = new SearchIndex();
+        for (int id = 0; id < 300; id++) {
+            String title = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)];
+            titles.add(title);
+            index.add(id, title, "Artist " + (id % 4));
+        }
+        // Remove and re-add some tracks so doc ids get reused
+        for (int id = 0; id < 300; id += 5) index.remove(id);
+        for (int id = 0; id < 300; id += 10) index.add(id, titles.get(id), "Artist " + (id % 4));
+
+        for (String query : new String[]{"love", "ove", "night", "e q", "artist 3", "zzz", "LOVE"}) {
+            List<Long> expected = new ArrayList<>();
+            for (int id = 0; id < 300; id++) {
+                if (id % 5 == 0 && id % 10 != 0) continue;
+                String key = (titles.get(id) + "\n" + "Artist " + (id % 4)).toLowerCase(Locale.ROOT);
+                if (key.contains(query.toLowerCase(Locale.ROOT))) expected.add((long) id);
+            }
+            List<Long> actual = new ArrayList<>();
+            for (int doc : index.search(query)) actual.add(index.getSongId(doc));
+            actual.sort(null);
+            assertEquals(query, expected, actual);
+        }
+    }
+
+    @Test
+    public void shortQuery_matchesWordPrefixes() {
+        SearchIndex index = new SearchIndex();
+        index.add(1, "Fire and Rain", "James Taylor");
+        index.add(2, "Firework", "Katy Perry");
+        index.add(3, "Bonfire", "Unknown");
+
+        assertEquals(2, index.search("fi").length);
+        assertEquals(1, index.search("k").length);
+        index.remove(2);
+        assertEquals(1, index.search("fi").length);
+        assertEquals(0, index.search("k").length);
+    }
+
+    @Test
+    public void refinedQueries_matchFreshLookups() {
+        String[] titles = {"Love Story", "Lovely", "Glove Box", "Loveless", "Queen of Hearts", "Lover"};
+        SearchIndex typing = new SearchIndex();
+        for (int i = 0; i < titles.length; i++) typing.add(i, titles[i], "Artist");
+
+        // Extending, editing mid-query and deleting, then a library change between keystrokes
+        String[] keystrokes = {"lov", "love", "lovel", "lovely", "glove", "lov", "love"};
+        for (String query : keystrokes) {
+            SearchIndex fresh = new SearchIndex();
+            for (int i = 0; i < titles.length; i++) fresh.add(i, titles[i], "Artist");
+            assertArrayEquals(query, songIds(fresh, fresh.search(query)), songIds(typing, typing.search(query)));
+        }
+        typing.add(6, "Love Me Do", "Artist");
+        assertEquals(6, typing.search("love").length);
+        typing.remove(0);
+        assertEquals(5, typing.search("love").length);
+    }
+
+    @Test
+    public void fuzzySearch_toleratesTypos() {
+        SearchIndex index = new SearchIndex();
+        index.add(1, "Yesterday", "The Beatles");
+        index.add(2, "Bohemian Rhapsody", "Queen");
+        index.add(3, "Beat It", "Michael Jackson");
+
+        assertArrayEquals(new long[]{1}, songIds(index, index.searchFuzzy("beatels", 10)));   // Swap
+        assertArrayEquals(new long[]{2}, songIds(index, index.searchFuzzy("rapsody", 10)));   // Deletion
+        assertArrayEquals(new long[]{2}, songIds(index, index.searchFuzzy("bohemain", 10)));  // Swap
+        assertArrayEquals(new long[]{1}, songIds(index, index.searchFuzzy("yestrday", 10)));  // Deletion
+        assertEquals(0, index.searchFuzzy("zeppelin", 10).length);
+        assertEquals(0, index.searchFuzzy("bea", 10).length); // Too short to guess
+        index.remove(1);
+        assertEquals(0, index.searchFuzzy("beatels", 10).length);
+    }
+
+    private static long[] songIds(SearchIndex index, int[] docs) {
+        long[] ids = new long[docs.length];
+        for (int i = 0; i < docs.length; i++) ids[i] = index.getSongId(docs[i]);
+        return ids;
+    }
+}